@@ -0,0 +1,104 @@
+package snakeris.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import snakeris.metrics.TickMetrics.Phase;
+
+/**
+ * События JFR тактов. Класс загружается только если JFR доступен, см. {@link TickProbe}.
+ * Собирается только на JDK 11+ (профиль jfr, исходники в src/jfr/java): в JDK 8 нет jdk.jfr.
+ * Запись: {@code -XX:StartFlightRecording}, по умолчанию записываются такты дольше {@link #DEFAULT_THRESHOLD}.
+ * Для записи всех тактов порог снимается настройкой {@code snakeris.Tick#threshold=0 ms}.
+ */
+final class JfrEvents implements TickEvents {
+    /**
+     * Порог длительности такта по умолчанию
+     */
+    static final String DEFAULT_THRESHOLD = "1 ms";
+
+    private static final EventType TICK = EventType.getEventType(TickEvent.class);
+
+    /**
+     * Создаётся через отражение в {@link TickProbe}
+     */
+    JfrEvents() {
+    }
+
+    @Override
+    public Object beginTick() {
+        if (!TICK.isEnabled()) return null;
+        TickEvent event = new TickEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Завершает событие такта и записывает его, если такт длиннее порога
+     */
+    @Override
+    public void commitTick(Object tick, long[] phaseNanos, int cellsChanged, int fallingBlocks, int rowsCleared, long allocated) {
+        TickEvent event = (TickEvent) tick;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.fall = phaseNanos[Phase.FALL.ordinal()];
+        event.snakeMove = phaseNanos[Phase.SNAKE_MOVE.ordinal()];
+        event.rowRemove = phaseNanos[Phase.ROW_REMOVE.ordinal()];
+        event.food = phaseNanos[Phase.FOOD.ordinal()];
+        event.dispatch = phaseNanos[Phase.DISPATCH.ordinal()];
+        event.cellsChanged = cellsChanged;
+        event.fallingBlocks = fallingBlocks;
+        event.rowsCleared = rowsCleared;
+        event.allocated = allocated;
+        event.commit();
+    }
+
+    @Name("snakeris.Tick")
+    @Label("Game Tick")
+    @Category("Snakeris")
+    @Description("Game logic tick with time spent in each phase. Phase times include nested phases.")
+    @Threshold(DEFAULT_THRESHOLD)
+    @StackTrace(false)
+    static class TickEvent extends Event {
+        @Label("Falling Blocks Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long fall;
+
+        @Label("Snake Move Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long snakeMove;
+
+        @Label("Row Removal Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long rowRemove;
+
+        @Label("Food Generation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long food;
+
+        @Label("Listener Dispatch Time")
+        @Description("Cell listeners including rendering")
+        @Timespan(Timespan.NANOSECONDS)
+        long dispatch;
+
+        @Label("Cells Changed")
+        int cellsChanged;
+
+        @Label("Falling Blocks")
+        int fallingBlocks;
+
+        @Label("Rows Cleared")
+        int rowsCleared;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+}
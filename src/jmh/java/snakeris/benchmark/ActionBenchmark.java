@@ -0,0 +1,105 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.logic.Cell;
+import snakeris.logic.FallingBlock;
+import snakeris.logic.Field;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Падение блоков {@link Field#action()}.
+ * В верхней половине поля расставляются блоки 2x2, которые падают по пустому полю.
+ * Перед тем как блоки долетят до низа, они расставляются заново (вне измерения).
+ * Число блоков ограничивается тем, сколько их помещается в верхнюю половину поля.
+ * Параметр tickThreads подключает пул такта {@link Field#setTickPool} (0 - без пула), например
+ *  {@code -p size=2000x3000 -p blocks=65536 -p tickThreads=4}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    @Param({"1", "16", "256"})
+    public int blocks;
+
+    @Param({"0", "4"})
+    public int tickThreads;
+
+    private ForkJoinPool pool;
+
+    private Field field;
+    /**
+     * Ячейки всех падающих блоков, нужны для очистки поля
+     */
+    private final List<Cell> blockCells = new ArrayList<>();
+    /**
+     * Сколько ещё раз блоки могут упасть до перестановки
+     */
+    private int fallsLeft;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        if (tickThreads > 0) {
+            pool = new ForkJoinPool(tickThreads);
+            field.setTickPool(pool);
+        }
+        placeBlocks();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetIfLanded() {
+        if (fallsLeft-- > 0) return;
+        List<Cell> current = new ArrayList<>();
+        for (Cell cell : blockCells) {
+            current.add(field.getCell(cell.getX(), cell.getY() + fallen()));
+        }
+        BenchmarkFields.clear(field, current);
+        placeBlocks();
+    }
+
+    private int fallen() {
+        return field.getHeight() / 2 - 2;
+    }
+
+    private void placeBlocks() {
+        blockCells.clear();
+        int perRow = field.getWidth() / 3;
+        int rows = field.getHeight() / 2 / 3;
+        int count = Math.min(blocks, perRow * rows);
+        for (int i = 0; i < count; i++) {
+            int x = i % perRow * 3;
+            int y = i / perRow * 3;
+            List<Cell> cells = new ArrayList<>(4);
+            cells.add(field.getCell(x, y));
+            cells.add(field.getCell(x + 1, y));
+            cells.add(field.getCell(x, y + 1));
+            cells.add(field.getCell(x + 1, y + 1));
+            new FallingBlock(cells, field);
+            blockCells.addAll(cells);
+        }
+        fallsLeft = fallen();
+    }
+
+    @Benchmark
+    public void action() {
+        field.action();
+    }
+}
@@ -0,0 +1,82 @@
+package snakeris.benchmark;
+
+import snakeris.logic.Cell;
+import snakeris.logic.Field;
+import snakeris.logic.cell.EmptyCellContent;
+import snakeris.logic.cell.FallingBlockCellContent;
+import snakeris.logic.cell.StaticCellContent;
+import snakeris.logic.grid.ChunkedGrid;
+import snakeris.logic.grid.ObjectGrid;
+import snakeris.logic.grid.PackedGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Вспомогательные методы для подготовки полей в бенчмарках
+ */
+final class BenchmarkFields {
+    private BenchmarkFields() {
+    }
+
+    /**
+     * Создаёт поле по строке размера вида "20x30"
+     * @param grid тип хранилища ячеек: "object" ({@link ObjectGrid}), "packed" ({@link PackedGrid})
+     *             или "chunked" ({@link ChunkedGrid})
+     */
+    static Field create(String size, String grid) {
+        switch (grid) {
+            case "object":
+                return new Field(new ObjectGrid(width(size), height(size)));
+            case "packed":
+                return new Field(new PackedGrid(width(size), height(size)));
+            case "chunked":
+                return new Field(new ChunkedGrid(width(size), height(size)));
+            default:
+                throw new IllegalArgumentException("Unknown grid: " + grid);
+        }
+    }
+
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /**
+     * Заполняет статическими блоками ряды [fromRow, height) кроме столбца hole, чтобы ряды не убирались
+     */
+    static void fillStatic(Field field, int fromRow, int hole) {
+        for (int y = fromRow; y < field.getHeight(); y++) {
+            for (int x = 0; x < field.getWidth(); x++) {
+                if (x != hole) field.getCell(x, y).setContent(StaticCellContent.instance);
+            }
+        }
+    }
+
+    /**
+     * Ячейки прямоугольника шириной не больше ширины поля, содержащего count ячеек, начиная с (x0, y0)
+     */
+    static List<Cell> rectangle(Field field, int x0, int y0, int count) {
+        int cols = Math.min(field.getWidth() - x0, (int) Math.ceil(Math.sqrt(count)));
+        List<Cell> cells = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cells.add(field.getCell(x0 + i % cols, y0 + i / cols));
+        }
+        return cells;
+    }
+
+    /**
+     * Очищает ячейки. Падающие блоки, которым принадлежат ячейки, убираются с поля.
+     */
+    static void clear(Field field, Iterable<Cell> cells) {
+        for (Cell cell : cells) {
+            if (cell.getContent() instanceof FallingBlockCellContent) {
+                field.removeFallingBlock(((FallingBlockCellContent) cell.getContent()).getBlock());
+            }
+            cell.setContent(EmptyCellContent.instance);
+        }
+    }
+}
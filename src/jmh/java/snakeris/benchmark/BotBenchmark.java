@@ -0,0 +1,53 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.Direction;
+import snakeris.bot.LookAheadBot;
+import snakeris.logic.Game;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Решение бота {@link LookAheadBot#next(Game)} с перебором на depth тактов без ограничения по времени.
+ * Позиция - игра с фиксированным зерном после нескольких десятков тактов, каждый вызов перебирает одно и то же дерево.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotBenchmark {
+    @Param({"4", "6"})
+    public int depth;
+
+    /**
+     * Количество потоков, 0 - по числу ядер
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    private LookAheadBot bot;
+    private Game game;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int parallelism = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        bot = new LookAheadBot(depth, TimeUnit.MINUTES.toMillis(1), parallelism);
+        game = new Game(20, 30, 5, 1);
+        game.step(Direction.BOTTOM);
+        for (int i = 0; i < 40 && !game.isOver(); i++) {
+            game.step(bot.next(game));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bot.close();
+    }
+
+    @Benchmark
+    public Direction next() {
+        return bot.next(game);
+    }
+}
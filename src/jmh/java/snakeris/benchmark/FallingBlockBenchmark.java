@@ -0,0 +1,97 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.logic.Cell;
+import snakeris.logic.FallingBlock;
+import snakeris.logic.Field;
+import snakeris.logic.cell.FallingBlockCellContent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Создание падающего блока и проверка его целостности (checkAndSeparate).
+ * Блок - прямоугольник из blockSize ячеек в левом верхнем углу поля,
+ * разрезанный пустым столбцом, через который проходит перемычка из одной ячейки.
+ * Удаление перемычки разделяет блок на два.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FallingBlockBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    @Param({"16", "256", "2048"})
+    public int blockSize;
+
+    private Field field;
+    /**
+     * Ячейки блока
+     */
+    private List<Cell> cells;
+    /**
+     * Ячейка-перемычка между половинами блока
+     */
+    private Cell bridge;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        int count = Math.min(blockSize, field.getWidth() * field.getHeight() / 4);
+        List<Cell> rect = BenchmarkFields.rectangle(field, 0, 0, count);
+        int cut = 0;
+        for (Cell cell : rect) cut = Math.max(cut, cell.getX());
+        cut = (cut + 1) / 2;
+        cells = new ArrayList<>(rect.size());
+        for (Cell cell : rect) {
+            if (cell.getX() != cut || cell.getY() == 0) cells.add(cell);
+        }
+        bridge = field.getCell(cut, 0);
+    }
+
+    /**
+     * Пустое поле перед созданием блока
+     */
+    @State(Scope.Thread)
+    public static class Cleared {
+        @Setup(Level.Invocation)
+        public void clear(FallingBlockBenchmark benchmark) {
+            BenchmarkFields.clear(benchmark.field, benchmark.cells);
+        }
+    }
+
+    /**
+     * Поле с созданным блоком
+     */
+    @State(Scope.Thread)
+    public static class Built {
+        private FallingBlock block;
+
+        @Setup(Level.Invocation)
+        public void build(FallingBlockBenchmark benchmark) {
+            BenchmarkFields.clear(benchmark.field, benchmark.cells);
+            block = new FallingBlock(benchmark.cells, benchmark.field);
+        }
+    }
+
+    @Benchmark
+    public FallingBlock construct(Cleared cleared) {
+        return new FallingBlock(cells, field);
+    }
+
+    /**
+     * Удаление перемычки: проверка целостности и выделение второй половины в отдельный блок
+     */
+    @Benchmark
+    public void removeCell(Built built) {
+        built.block.removeCell(bridge);
+    }
+}
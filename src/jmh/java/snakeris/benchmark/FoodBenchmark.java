@@ -0,0 +1,68 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.logic.Cell;
+import snakeris.logic.Field;
+import snakeris.logic.cell.EmptyCellContent;
+import snakeris.logic.cell.FoodCellContent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация еды {@link Field#randomizeFood(int)} и {@link Field#randomizeFood(int, int)}.
+ * Нижняя четверть поля занята статическими блоками, сгенерированная еда сразу убирается,
+ * поэтому каждая операция выполняется на одинаковом поле.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FoodBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed", "chunked"})
+    public String grid;
+
+    private Field field;
+    /**
+     * Ячейки, в которые была помещена еда
+     */
+    private final List<Cell> placed = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        BenchmarkFields.fillStatic(field, field.getHeight() * 3 / 4, 0);
+        field.addCellListener((cell, old) -> {
+            if (cell.getContent() instanceof FoodCellContent) placed.add(cell);
+        });
+    }
+
+    @Benchmark
+    public void randomizeFood() {
+        field.randomizeFood(1);
+        clearPlaced();
+    }
+
+    /**
+     * Генерация 16 единиц еды одной пачкой
+     */
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void randomizeFoodBatch() {
+        field.randomizeFood(1, 16);
+        clearPlaced();
+    }
+
+    private void clearPlaced() {
+        for (int i = 0; i < placed.size(); i++) {
+            placed.get(i).setContent(EmptyCellContent.instance);
+        }
+        placed.clear();
+    }
+}
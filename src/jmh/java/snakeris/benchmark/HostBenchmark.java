@@ -0,0 +1,69 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.Direction;
+import snakeris.host.GameHost;
+import snakeris.logic.Game;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Такт хоста {@link GameHost#tick()}: по такту каждой из sessions игр.
+ * Пропускная способность хоста - sessions, делённое на время операции.
+ * Змейки двигаются случайно, завершившиеся игры заменяются новыми вне измерения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostBenchmark {
+    @Param({"1000", "10000"})
+    public int sessions;
+
+    @Param({"20x30", "200x300"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    /**
+     * Количество потоков, 0 - по числу ядер
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    private GameHost host;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        host = threads == 0 ? new GameHost() : new GameHost(threads);
+        refill();
+    }
+
+    /**
+     * Добавляет игры вместо завершившихся
+     */
+    @Setup(Level.Invocation)
+    public void refill() {
+        host.drainFinished();
+        for (int i = host.getRunningCount(); i < sessions; i++) {
+            Random random = new Random(i);
+            Direction[] dirs = Direction.values();
+            Game game = new Game(BenchmarkFields.create(size, grid), 5);
+            host.addSession(game, g -> random.nextInt(8) == 0 ? dirs[random.nextInt(dirs.length)] : null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        host.close();
+    }
+
+    @Benchmark
+    public int tick() {
+        return host.tick();
+    }
+}
@@ -0,0 +1,46 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.Direction;
+import snakeris.logic.Game;
+import snakeris.metrics.TickMetrics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость метрик тактов {@link TickMetrics}: такт игры без метрик и с подключёнными метриками.
+ * Змейка поворачивает случайно, умершая игра заменяется новой с тем же зерном.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private final Direction[] dirs = Direction.values();
+    private final TickMetrics tickMetrics = new TickMetrics();
+    private Random random;
+    private Game game;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(1);
+        newGame();
+    }
+
+    private void newGame() {
+        game = new Game(BenchmarkFields.create("20x30", "object"), 5);
+        game.getField().setMetrics(metrics ? tickMetrics : null);
+    }
+
+    @Benchmark
+    public boolean step() {
+        if (game.isOver()) newGame();
+        return game.step(random.nextInt(8) == 0 ? dirs[random.nextInt(dirs.length)] : null);
+    }
+}
@@ -0,0 +1,76 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.logic.Cell;
+import snakeris.logic.FallingBlock;
+import snakeris.logic.Field;
+import snakeris.logic.cell.EmptyCellContent;
+import snakeris.logic.cell.FallingBlockCellContent;
+import snakeris.logic.cell.FoodCellContent;
+import snakeris.logic.cell.StaticCellContent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удаление собранного ряда (removeStaticRows/removeStaticRow) через {@link Field#action()}.
+ * Внизу поля лежит стопка из rows рядов статических блоков с дыркой в первом столбце.
+ * Блок из одной ячейки падает в дырку нижнего ряда, ряд собирается, и вся стопка смещается вниз.
+ * Перед каждым вызовом стопка и блок восстанавливаются (вне измерения).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowClearBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    @Param({"4", "16"})
+    public int rows;
+
+    private Field field;
+    /**
+     * Еда, сгенерированная при удалении ряда. Убирается при восстановлении.
+     */
+    private final List<Cell> food = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        rows = Math.min(rows, field.getHeight() - 2);
+        BenchmarkFields.fillStatic(field, field.getHeight() - rows, 0);
+        field.addCellListener((cell, old) -> {
+            if (cell.getContent() instanceof FoodCellContent) food.add(cell);
+        });
+        dropBlock();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        if (field.getCell(0, field.getHeight() - 1).getContent() instanceof FallingBlockCellContent) return;
+        food.forEach(cell -> cell.setContent(EmptyCellContent.instance));
+        food.clear();
+        int top = field.getHeight() - rows;
+        for (int x = 1; x < field.getWidth(); x++) {
+            field.getCell(x, top).setContent(StaticCellContent.instance);
+        }
+        dropBlock();
+    }
+
+    private void dropBlock() {
+        new FallingBlock(Collections.singletonList(field.getCell(0, field.getHeight() - 1)), field);
+    }
+
+    @Benchmark
+    public void clearRow() {
+        field.action();
+    }
+}
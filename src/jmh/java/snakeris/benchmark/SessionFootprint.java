@@ -0,0 +1,49 @@
+package snakeris.benchmark;
+
+import snakeris.Direction;
+import snakeris.host.GameHost;
+import snakeris.logic.Game;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+/**
+ * Замер памяти сессии хоста и пропускной способности хоста.
+ * Создаёт заданное количество сессий, сравнивает занятую кучу до и после (после сборки мусора),
+ *  затем выполняет такты и печатает количество тактов сессий в секунду.
+ * Аргументы: количество сессий (10000), размер поля (20x30), хранилище (object), количество тактов (1000).
+ */
+public class SessionFootprint {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String size = args.length > 1 ? args[1] : "20x30";
+        String grid = args.length > 2 ? args[2] : "object";
+        int ticks = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        Direction[] dirs = Direction.values();
+        try (GameHost host = new GameHost()) {
+            long before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                Random random = new Random(i);
+                Game game = new Game(BenchmarkFields.create(size, grid), 5);
+                host.addSession(game, g -> random.nextInt(8) == 0 ? dirs[random.nextInt(dirs.length)] : null);
+            }
+            long perSession = (usedHeap() - before) / count;
+            System.out.printf("sessions: %d, field %s (%s)%n", count, size, grid);
+            System.out.printf("memory per session: %d bytes (target %d)%n", perSession, GameHost.SESSION_MEMORY_TARGET);
+
+            host.run(ticks);
+            System.out.printf("threads: %d, ticks: %d, throughput: %.0f session ticks/s, running: %d%n",
+                    host.getParallelism(), host.getTotalTicks(), host.getTicksPerSecond(), host.getRunningCount());
+        }
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
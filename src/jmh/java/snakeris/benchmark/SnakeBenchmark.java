@@ -0,0 +1,82 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.logic.Cell;
+import snakeris.logic.Field;
+import snakeris.logic.Snake;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Движение змейки {@link Snake#move()} и откусывание хвоста {@link Snake#removeBodyBlock(Cell)}.
+ * Змейка лежит в верхнем ряду и двигается вправо, проходя через границу поля.
+ * Длина змейки ограничивается шириной поля.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnakeBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    @Param({"5", "100", "1000"})
+    public int length;
+
+    private Field field;
+    private Snake snake;
+    /**
+     * Текущая длина змейки
+     */
+    private int current;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        length = Math.min(length, field.getWidth() - 1);
+        snake = new Snake(Math.min(length, 5), field);
+        current = Math.min(length, 5);
+        regrow();
+    }
+
+    /**
+     * Возвращает змейке длину {@link #length}, убирая с поля отделившийся хвост
+     */
+    @Setup(Level.Invocation)
+    public void regrow() {
+        if (current == length) return;
+        int width = field.getWidth();
+        List<Cell> tail = new ArrayList<>();
+        for (int i = current; i < length; i++) {
+            tail.add(field.getCell(Math.floorMod(snake.getHeadX() - i, width), snake.getHeadY()));
+        }
+        BenchmarkFields.clear(field, tail);
+        snake.grow(length - current);
+        for (int i = current; i < length; i++) {
+            snake.move();
+        }
+        current = length;
+    }
+
+    @Benchmark
+    public void move() {
+        snake.move();
+    }
+
+    /**
+     * Откусывает середину змейки. Задняя половина становится падающим блоком.
+     */
+    @Benchmark
+    public void removeBodyBlock() {
+        int bite = current / 2;
+        snake.removeBodyBlock(field.getCell(Math.floorMod(snake.getHeadX() - bite, field.getWidth()), snake.getHeadY()));
+        current = bite;
+    }
+}
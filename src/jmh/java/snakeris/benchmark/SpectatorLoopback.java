@@ -0,0 +1,85 @@
+package snakeris.benchmark;
+
+import snakeris.Direction;
+import snakeris.logic.Field;
+import snakeris.logic.Game;
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.FoodCellContent;
+import snakeris.spectator.SpectatorClient;
+import snakeris.spectator.SpectatorServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка трансляции зрителям на локальном адресе.
+ * Запускает игру с {@link SpectatorServer}, подключает зрителей (половину - в середине игры, они начинают с ключевого кадра),
+ *  выполняет такты без задержек, ждёт, пока зрители примут все кадры, и сравнивает их поля с полем игры.
+ * Печатает средний размер кадра в сравнении с размером поля и количество несовпавших зрителей.
+ * Аргументы: количество зрителей (16), размер поля (20x30), количество тактов (5000).
+ */
+public class SpectatorLoopback {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        String size = args.length > 1 ? args[1] : "20x30";
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        Random random = new Random(1);
+        Direction[] dirs = Direction.values();
+        Game game = new Game(BenchmarkFields.create(size, "object"), 5);
+        Field field = game.getField();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (SpectatorServer server = new SpectatorServer(field, address)) {
+            InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            List<SpectatorClient> clients = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int tick = 0; tick < ticks && !game.isOver(); tick++) {
+                if (tick == 0 || tick == ticks / 2) {
+                    for (int i = 0; i < count / 2; i++) {
+                        SpectatorClient client = new SpectatorClient(local);
+                        client.start(Runnable::run);
+                        clients.add(client);
+                    }
+                }
+                //Бот уклоняется от статических блоков и собственного тела не всегда, игра может закончиться раньше
+                game.step(random.nextInt(8) == 0 ? dirs[random.nextInt(dirs.length)] : null);
+            }
+            long frames = server.getFrameNumber();
+            long deadline = System.currentTimeMillis() + 10_000;
+            for (SpectatorClient client : clients) {
+                while (client.getFrameNumber() < frames && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int mismatched = 0;
+            for (SpectatorClient client : clients) {
+                if (!sameCells(field, client.getField())) mismatched++;
+                client.close();
+            }
+            System.out.printf("spectators: %d, field %s, frames: %d (%.0f frames/s)%n", clients.size(), size, frames, frames / seconds);
+            System.out.printf("encoded: %.1f bytes/frame (board: %d cells)%n",
+                    (double) server.getBytesEncoded() / Math.max(1, frames), field.getWidth() * field.getHeight());
+            System.out.printf("mismatched spectators: %d%n", mismatched);
+        }
+    }
+
+    /**
+     * Совпадают ли типы содержимого ячеек и питательность еды
+     */
+    private static boolean sameCells(Field expected, Field actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                CellContent a = expected.getContent(x, y);
+                CellContent b = actual.getContent(x, y);
+                if (!a.getName().equals(b.getName())) return false;
+                if (a instanceof FoodCellContent && ((FoodCellContent) a).nutrition != ((FoodCellContent) b).nutrition) return false;
+            }
+        }
+        return true;
+    }
+}
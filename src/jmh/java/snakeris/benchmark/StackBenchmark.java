@@ -0,0 +1,66 @@
+package snakeris.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import snakeris.Direction;
+import snakeris.logic.FallingBlock;
+import snakeris.logic.Field;
+import snakeris.logic.Snake;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Остановка стопок падающих блоков {@link Field#action()}.
+ * Змейка лежит горизонтально в середине поля, над каждой её ячейкой стопка блоков из одной ячейки.
+ * Блоки стопки создаются сверху вниз, поэтому в списке поля верхний блок стоит раньше нижнего.
+ * Все блоки остановлены змейкой, положение не меняется, и каждый вызов выполняет одну и ту же работу.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackBenchmark {
+    @Param({"20x30", "200x300", "2000x3000"})
+    public String size;
+
+    @Param({"object", "packed"})
+    public String grid;
+
+    /**
+     * Высота стопки. Ограничивается половиной высоты поля.
+     */
+    @Param({"4", "64"})
+    public int height;
+
+    private Field field;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        field = BenchmarkFields.create(size, grid);
+        int row = field.getHeight() / 2;
+        int length = Math.min(field.getWidth() / 2, 64);
+        height = Math.min(height, row);
+        //Змейка спускается из верхнего ряда в ряд row и ложится горизонтально в столбцах length-1 .. 2*length-2
+        Snake snake = new Snake(length, field);
+        snake.setDir(Direction.BOTTOM);
+        for (int i = 0; i < row; i++) {
+            snake.move();
+        }
+        snake.setDir(Direction.RIGHT);
+        for (int i = 0; i < length - 1; i++) {
+            snake.move();
+        }
+        for (int x = length - 1; x < 2 * length - 1; x++) {
+            for (int y = row - height; y < row; y++) {
+                new FallingBlock(Collections.singletonList(field.getCell(x, y)), field);
+            }
+        }
+    }
+
+    @Benchmark
+    public void action() {
+        field.action();
+    }
+}
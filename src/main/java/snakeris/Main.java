@@ -12,13 +12,32 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 import javafx.stage.Stage;
+import snakeris.journal.GameRecorder;
 import snakeris.logic.Field;
-import snakeris.logic.Snake;
-import snakeris.logic.cell.FoodCellContent;
+import snakeris.logic.Game;
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.EmptyCellContent;
+import snakeris.logic.cell.SnakeCellContent;
 import snakeris.logic.cell.StaticCellContent;
+import snakeris.logic.grid.ChunkedGrid;
+import snakeris.logic.grid.ObjectGrid;
+import snakeris.loop.LogicLoop;
+import snakeris.loop.TickFrame;
+import snakeris.metrics.TickMetrics;
+import snakeris.spectator.SpectatorServer;
+import snakeris.ui.FieldCanvasRenderer;
 import snakeris.ui.FieldPaneMapping;
+import snakeris.ui.FieldRenderer;
+import snakeris.ui.ViewportRenderer;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main extends Application {
     /**
@@ -33,6 +52,19 @@ public class Main extends Application {
      * Высота поля в ячейках
      */
     private static final int HEIGHT = 30;
+    /**
+     * Наибольший размер окна поля в ячейках. Большее поле рисуется окном, следующим за змейкой ({@link ViewportRenderer}).
+     */
+    private static final int VIEWPORT_WIDTH = 40;
+    private static final int VIEWPORT_HEIGHT = 30;
+    /**
+     * Поле с большим количеством ячеек хранится разреженно ({@link ChunkedGrid})
+     */
+    private static final int SPARSE_AREA = 1 << 22;
+    /**
+     * Системное свойство с размером поля вида "200x300". Если не задано, размер {@link #WIDTH}x{@link #HEIGHT}.
+     */
+    private static final String BOARD_PROPERTY = "snakeris.board";
     /**
      * Скорость движения змейки (ячеек в секунду)
      */
@@ -41,6 +73,20 @@ public class Main extends Application {
      * Скорость движения падающих блоков (ячеек в секунду)
      */
     private static final double BLOCKS_SPEED = 1.5;
+    /**
+     * Рисовать поле на холсте ({@link FieldCanvasRenderer}) или узлами ({@link FieldPaneMapping})
+     */
+    private static final boolean CANVAS_RENDERER = true;
+    /**
+     * Системное свойство с путём файла, в который записывается журнал игры ({@link GameRecorder}).
+     * Если не задано, игра не записывается.
+     */
+    private static final String JOURNAL_PROPERTY = "snakeris.journal";
+    /**
+     * Системное свойство с портом трансляции игры зрителям ({@link SpectatorServer}).
+     * Если не задано, игра не транслируется.
+     */
+    private static final String SPECTATOR_PORT_PROPERTY = "snakeris.spectator.port";
 
     public static void main(String[] args) {
         launch(args);
@@ -50,18 +96,36 @@ public class Main extends Application {
 
     private Stage primaryStage;
     private Pane root;
-    private Field field;
+    private Game game;
     private FieldPaneMapping fieldPaneMapping;
-    private Snake snake;
-    private volatile Direction dir = Direction.RIGHT;
+    private FieldRenderer fieldRenderer;
+    /**
+     * Отрисовка окном для полей больше окна, иначе {@code null}
+     */
+    private ViewportRenderer viewport;
+    /**
+     * Размер поля в ячейках
+     */
+    private int width = WIDTH, height = HEIGHT;
+    private GameRecorder recorder;
+    private OutputStream journal;
+    private SpectatorServer spectatorServer;
     /**
-     * Обновлялось ли направление после последнего движения змейки
+     * Поток логики текущей игры
      */
-    private volatile boolean dirChanged = false;
+    private LogicLoop loop;
+    /**
+     * Копия поля игры в потоке JavaFX, по которой рисуется поле
+     */
+    private Field mirror;
+    /**
+     * Последний полученный кадр такта
+     */
+    private TickFrame lastFrame;
     /**
      * Идёт игра или пауза
      */
-    private volatile boolean active = true;
+    private boolean active = true;
     /**
      * Счёт
      */
@@ -72,14 +136,35 @@ public class Main extends Application {
      * @return корневой элмент поля
      */
     private Parent createContent(){
-        field = new Field(WIDTH,HEIGHT);
+        readBoardSize();
+        boolean sparse = (long) width * height > SPARSE_AREA;
+        game = sparse
+                ? new Game(new Field(new ChunkedGrid(width, height)), 5)
+                : new Game(width, height, 5);
+        //На большом поле падающих блоков может быть много, тяжёлые этапы такта выполняются в общем пуле
+        if (sparse) game.getField().setTickPool(ForkJoinPool.commonPool());
+        //Змейка двигается каждый такт, блоки падают раз в несколько тактов
+        game.setBlocksPeriod((int) Math.max(1, Math.round(SNAKE_SPEED / BLOCKS_SPEED)));
+        startJournal();
+        startSpectatorServer(game.getField());
+        Field field = createMirror(game.getField());
         root = new Pane();
-        root.setPrefSize(WIDTH*GRID_SIZE, HEIGHT*GRID_SIZE);
-        drawGrid();
-        fieldPaneMapping = new FieldPaneMapping(field, root, GRID_SIZE);
-        snake = new Snake(5, field);
-        field.addEatListener(n -> setScore(score + n));
-        field.addRowRemoveListener(n -> setScore(score + (2*100+(n-1)*100)*n/2));
+        viewport = null;
+        if (width > VIEWPORT_WIDTH || height > VIEWPORT_HEIGHT) {
+            //Поле не помещается на экран: рисуется только окно вокруг змейки
+            viewport = new ViewportRenderer(field, GRID_SIZE, VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+            viewport.follow(game.getSnake().getHeadX(), game.getSnake().getHeadY());
+            fieldRenderer = viewport;
+            root.getChildren().add(fieldRenderer.getNode());
+        } else if (CANVAS_RENDERER) {
+            root.setPrefSize(width*GRID_SIZE, height*GRID_SIZE);
+            fieldRenderer = new FieldCanvasRenderer(field, GRID_SIZE);
+            root.getChildren().add(fieldRenderer.getNode());
+        } else {
+            root.setPrefSize(width*GRID_SIZE, height*GRID_SIZE);
+            drawGrid();
+            fieldPaneMapping = new FieldPaneMapping(field, root, GRID_SIZE);
+        }
 
         /*for (int y = HEIGHT-1; y >=HEIGHT-3 ; y--) {
             for (int x = 0; x < WIDTH; x++) {
@@ -87,53 +172,207 @@ public class Main extends Application {
             }
         }*/
 
-        field.randomizeFood(1);
-        field.randomizeFood(-1);
-
-        //Таймер отсчитывает время, по которому происходит движение змейки и блоков.
+        //Такты выполняет поток логики, таймер в каждом кадре забирает результаты тактов и рисует поле
+        loop = new LogicLoop(game, this::step, SNAKE_SPEED);
+        lastFrame = null;
         AnimationTimer timer = new AnimationTimer() {
-            /**
-             * Время последнего движения змейки
-             */
-            long lastSnakeMove = 0;
-            /**
-             * Время последнего падения блоков
-             */
-            long lastAction = 0;
             @Override
             public void handle(long now) {
-                if(!active) return;
-                if(lastSnakeMove ==0){
-                    lastSnakeMove = now;
+                mirror.beginTick();
+                try {
+                    loop.drain(Main.this::applyFrame);
+                } catch (IllegalStateException e) {
+                    //Поток логики завершился с ошибкой: игра останавливается, ошибка показывается один раз
+                    this.stop();
+                    loop.close();
+                    abortJournal();
+                    e.printStackTrace();
+                    Platform.runLater(() -> notifyFailure(e.getCause() != null ? e.getCause() : e));
                     return;
+                } finally {
+                    mirror.commitTick();
                 }
-                if(lastAction ==0){
-                    lastAction = now;
-                    return;
+                if (viewport != null && lastFrame != null) {
+                    int head = lastFrame.getHeadAfter();
+                    viewport.follow(head % width, head / width);
                 }
-                //Если прошло достаточно времени, запускается падение блоков
-                if(now> lastAction +(1000000000L)/BLOCKS_SPEED){
-                    lastAction = now;
-                    field.action();
+                //Холст перерисовывается только в кадрах, в которых изменились ячейки или змейка в движении
+                if (fieldRenderer != null) {
+                    fieldRenderer.render();
+                    interpolate(System.nanoTime());
                 }
-                //Если обновилось направление змейки или прошло достаточно времени с последнего движения, ход змейки
-                if(dirChanged || now> lastSnakeMove +(1000000000L)/SNAKE_SPEED){
-                    lastSnakeMove = now;
-                    snake.setDir(dir);
-                    dirChanged = false;
-                    snake.move();
-                    //Если змейка умерла, таймер останавливается и игра заканчивается
-                    if(snake.isDead()){
-                        this.stop();
-                        Platform.runLater(Main.this::notifyGameOver);
-                    }
+                //Если змейка умерла, таймер останавливается и игра заканчивается
+                if (lastFrame != null && !lastFrame.isAlive()) {
+                    this.stop();
+                    loop.close();
+                    finishJournal();
+                    printMetrics();
+                    Platform.runLater(Main.this::notifyGameOver);
                 }
             }
         };
         timer.start();
+        loop.start();
         return root;
     }
 
+    /**
+     * Читает размер поля из свойства {@link #BOARD_PROPERTY}
+     * @throws IllegalArgumentException если размер задан неверно, не положителен или ячеек больше, чем помещается в индекс
+     */
+    private void readBoardSize() {
+        String size = System.getProperty(BOARD_PROPERTY);
+        if (size == null) return;
+        int x = size.indexOf('x');
+        try {
+            width = Integer.parseInt(size.substring(0, x));
+            height = Integer.parseInt(size.substring(x + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Board size must look like 200x300: " + size, e);
+        }
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Board size must be positive: " + size);
+        if ((long) width * height > Integer.MAX_VALUE) throw new IllegalArgumentException("Board is too big: " + size);
+    }
+
+    /**
+     * Копия поля для отрисовки в потоке JavaFX. Обновляется кадрами тактов {@link TickFrame}, поле игры читает только поток логики.
+     * Вызывается до запуска потока логики. Копируются только непустые ячейки ({@link Field#nextNonEmpty(int)}).
+     */
+    private Field createMirror(Field field) {
+        int width = field.getWidth();
+        mirror = new Field((long) width * field.getHeight() > SPARSE_AREA
+                ? new ChunkedGrid(width, field.getHeight())
+                : new ObjectGrid(width, field.getHeight()));
+        mirror.setMetrics(null);
+        for (int i = field.nextNonEmpty(0); i >= 0; i = field.nextNonEmpty(i + 1)) {
+            mirror.setContent(i % width, i / width, field.getContent(i % width, i / width));
+        }
+        return mirror;
+    }
+
+    /**
+     * Переносит изменения такта на копию поля
+     */
+    private void applyFrame(TickFrame frame) {
+        int width = mirror.getWidth();
+        for (int i = 0; i < frame.size(); i++) {
+            int index = frame.getIndex(i);
+            mirror.setContent(index % width, index / width, frame.getNew(i));
+        }
+        if (frame.getScore() != score) setScore(frame.getScore());
+        lastFrame = frame;
+    }
+
+    /**
+     * Рисует голову и хвост змейки между последним и предыдущим тактом: голова въезжает в новую ячейку,
+     *  хвост уходит из освобождённой, пока не пройдёт время такта. Поле отображается с отставанием не больше одного такта.
+     * @param now текущее время {@link System#nanoTime()}
+     */
+    private void interpolate(long now) {
+        if (lastFrame == null || !lastFrame.isAlive()) return;
+        double alpha = (now - lastFrame.getTime()) / (double) loop.getStepNanos();
+        if (alpha >= 1) return;
+        int width = mirror.getWidth();
+        int head = lastFrame.getHeadAfter();
+        CellContent snake = mirror.getContent(head % width, head / width);
+        if (head != lastFrame.getHeadBefore() && snake instanceof SnakeCellContent) {
+            CellContent under = lastFrame.getOldAt(head);
+            fieldRenderer.renderPartial(head, lastFrame.getHeadBefore(), alpha,
+                    under == null ? EmptyCellContent.instance : under, snake);
+        }
+        int tail = lastFrame.getTailBefore();
+        if (tail >= 0 && lastFrame.getTailAfter() >= 0 && tail != lastFrame.getTailAfter()
+                && mirror.getContent(tail % width, tail / width) == EmptyCellContent.instance) {
+            CellContent old = lastFrame.getOldAt(tail);
+            if (old instanceof SnakeCellContent) {
+                fieldRenderer.renderPartial(tail, lastFrame.getTailAfter(), 1 - alpha, EmptyCellContent.instance, old);
+            }
+        }
+    }
+
+    /**
+     * Выполняет такт игры в потоке логики, записывая его в журнал, если запись включена
+     * @return {@code true} если змейка жива после хода
+     */
+    private boolean step(Direction dir) {
+        if (recorder == null) return game.step(dir);
+        try {
+            return recorder.step(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Начинает запись журнала новой игры в файл из свойства {@link #JOURNAL_PROPERTY}
+     */
+    private void startJournal() {
+        String path = System.getProperty(JOURNAL_PROPERTY);
+        if (path == null) return;
+        try {
+            journal = new BufferedOutputStream(new FileOutputStream(path));
+            recorder = new GameRecorder(game, journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает конец журнала и закрывает файл
+     */
+    private void finishJournal() {
+        if (recorder == null) return;
+        try {
+            recorder.finish();
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            recorder = null;
+            journal = null;
+        }
+    }
+
+    /**
+     * Закрывает файл журнала после ошибки, не дописывая конец: журнал остаётся неполным
+     */
+    private void abortJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            recorder = null;
+            journal = null;
+        }
+    }
+
+    /**
+     * Печатает метрики тактов, если они включены свойством {@link TickMetrics#PROPERTY}
+     */
+    private void printMetrics() {
+        TickMetrics metrics = TickMetrics.global();
+        if (metrics == null) return;
+        System.err.println(metrics);
+        System.err.println("input latency ns: " + loop.getInputLatency());
+    }
+
+    /**
+     * Начинает трансляцию поля новой игры на порт из свойства {@link #SPECTATOR_PORT_PROPERTY}.
+     * Трансляция предыдущей игры останавливается.
+     */
+    private void startSpectatorServer(Field field) {
+        String port = System.getProperty(SPECTATOR_PORT_PROPERTY);
+        if (port == null) return;
+        try {
+            if (spectatorServer != null) spectatorServer.close();
+            spectatorServer = new SpectatorServer(field, new InetSocketAddress(Integer.parseInt(port)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Диалог "Game over!"
      */
@@ -149,6 +388,21 @@ public class Main extends Application {
         start(primaryStage);
     }
 
+    /**
+     * Диалог об ошибке, остановившей игру
+     */
+    private void notifyFailure(Throwable error) {
+        Dialog<ButtonType> d = new Alert(Alert.AlertType.ERROR, "Игра остановлена из-за ошибки. Перезапустить?", ButtonType.FINISH, ButtonType.NEXT);
+        d.setHeaderText(String.valueOf(error));
+        d.setTitle("Error");
+        Optional<ButtonType> button = d.showAndWait();
+        if(button.orElse(ButtonType.FINISH).equals(ButtonType.FINISH)){
+            Platform.exit();
+            return;
+        }
+        start(primaryStage);
+    }
+
     /**
      * Инициализация и запуск игры
      * @param primaryStage
@@ -179,6 +433,7 @@ public class Main extends Application {
                     break;
                 case SPACE:
                     active = !active;
+                    loop.setPaused(!active);
                 default:
                     break;
             }
@@ -187,27 +442,25 @@ public class Main extends Application {
     }
 
     /**
-     * Устанавливает направление змейки по нажатию клавиши
+     * Передаёт нажатие направления потоку логики. Повороты применяются по одному за такт в порядке нажатий.
      * @param dir
      */
     public void setDir(Direction dir) {
         if(!active) return;
-        if(dir.isOpposite(snake.getDir())) return;
-        this.dir = dir;
-        dirChanged = true;
+        loop.offerDirection(dir);
     }
 
     /**
      * Рисует сетку
      */
     private void drawGrid(){
-        for (int i = 0; i <= WIDTH; i++) {
-            Line line = new Line(i*GRID_SIZE, 0, i*GRID_SIZE, HEIGHT*GRID_SIZE);
+        for (int i = 0; i <= width; i++) {
+            Line line = new Line(i*GRID_SIZE, 0, i*GRID_SIZE, height*GRID_SIZE);
             line.setStroke(Color.valueOf("#EEEEEE"));
             root.getChildren().add(line);
         }
-        for (int i = 0; i <= HEIGHT; i++) {
-            Line line = new Line(0, i*GRID_SIZE, WIDTH*GRID_SIZE, i*GRID_SIZE);
+        for (int i = 0; i <= height; i++) {
+            Line line = new Line(0, i*GRID_SIZE, width*GRID_SIZE, i*GRID_SIZE);
             line.setStroke(Color.valueOf("#EEEEEE"));
             root.getChildren().add(line);
         }
@@ -0,0 +1,176 @@
+package snakeris.bot;
+
+import snakeris.Direction;
+import snakeris.host.DirectionSource;
+import snakeris.logic.Game;
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.FoodCellContent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Бот, выбирающий направление змейки перебором ходов на несколько тактов вперёд.
+ * Каждый узел дерева перебора - копия игры ({@link Game#fork()}), на которой выполнен такт {@link Game#step(Direction)}
+ *  со всеми правилами поля: ход змейки, падение блоков, удаление рядов и генерация еды с тем же генератором.
+ * Поддеревья перебираются параллельно через {@link ForkJoinPool}, нижние уровни - последовательно в одной задаче.
+ * Если время на решение истекло, недостроенные ветви оцениваются по текущему положению.
+ * <p>
+ * Оценка позиции - счёт игры, затем расстояние от головы до ближайшей полезной еды. Смерть хуже любой позиции,
+ *  из двух смертей лучше более поздняя.
+ */
+public class LookAheadBot implements DirectionSource, AutoCloseable {
+    /**
+     * Глубина перебора по умолчанию, тактов
+     */
+    public static final int DEFAULT_DEPTH = 5;
+    /**
+     * Поддеревья с такой оставшейся глубиной перебираются в одной задаче
+     */
+    private static final int SEQUENTIAL_DEPTH = 2;
+    /**
+     * Оценка смерти змейки без учёта такта
+     */
+    private static final double DEAD = -1e12;
+    /**
+     * Вес очка счёта относительно одной ячейки расстояния до еды
+     */
+    private static final double SCORE_WEIGHT = 1000;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ForkJoinPool pool;
+    private final int depth;
+    private final long budgetNanos;
+
+    /**
+     * Бот с потоком на каждое ядро
+     * @param depth на сколько тактов вперёд перебираются ходы, больше 0
+     * @param budgetMillis время на одно решение, мс, больше 0
+     */
+    public LookAheadBot(int depth, long budgetMillis) {
+        this(depth, budgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param depth на сколько тактов вперёд перебираются ходы, больше 0
+     * @param budgetMillis время на одно решение, мс, больше 0
+     * @param parallelism количество потоков перебора, больше 0
+     */
+    public LookAheadBot(int depth, long budgetMillis, int parallelism) {
+        if (depth <= 0) throw new IllegalArgumentException("Depth must be positive");
+        if (budgetMillis <= 0) throw new IllegalArgumentException("Time budget must be positive");
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+        this.depth = depth;
+        this.budgetNanos = budgetMillis * 1_000_000;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Выбирает направление для следующего такта. Игра на время вызова не должна меняться.
+     * @return лучшее направление или {@code null}, если лучше продолжать текущее
+     */
+    @Override
+    public Direction next(Game game) {
+        if (game.isOver()) return null;
+        long deadline = System.nanoTime() + budgetNanos;
+        Direction current = game.getSnake().getDir();
+        List<Search> searches = new ArrayList<>(3);
+        for (Direction dir : DIRECTIONS) {
+            if (!dir.isOpposite(current)) searches.add(new Search(game.fork(), dir, depth - 1, deadline));
+        }
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(searches);
+                return null;
+            }
+        });
+        //При равной оценке змейка продолжает движение
+        Direction best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Search search : searches) {
+            double value = search.join();
+            if (value > bestValue || value == bestValue && search.dir == current) {
+                best = search.dir;
+                bestValue = value;
+            }
+        }
+        return best == current ? null : best;
+    }
+
+    /**
+     * Останавливает потоки перебора
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Оценка узла: копия родительской игры после хода в направлении dir и лучшая оценка её продолжений.
+     * Копия создаётся задачей родителя до запуска детей: {@link Game#fork()} меняет состояние копируемой игры
+     *  (её куски становятся общими), поэтому одну игру не копируют из нескольких потоков.
+     */
+    private static class Search extends RecursiveTask<Double> {
+        /**
+         * Копия родительской игры, принадлежит только этой задаче
+         */
+        private final Game game;
+        private final Direction dir;
+        private final int remaining;
+        private final long deadline;
+
+        Search(Game game, Direction dir, int remaining, long deadline) {
+            this.game = game;
+            this.dir = dir;
+            this.remaining = remaining;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Double compute() {
+            if (!game.step(dir)) return DEAD + game.getTick();
+            if (remaining == 0 || System.nanoTime() > deadline) return evaluate(game);
+            Direction current = game.getSnake().getDir();
+            List<Search> children = new ArrayList<>(3);
+            for (Direction next : DIRECTIONS) {
+                if (!next.isOpposite(current)) children.add(new Search(game.fork(), next, remaining - 1, deadline));
+            }
+            double best = Double.NEGATIVE_INFINITY;
+            if (remaining > SEQUENTIAL_DEPTH) {
+                invokeAll(children);
+                for (Search child : children) {
+                    best = Math.max(best, child.join());
+                }
+            } else {
+                for (Search child : children) {
+                    best = Math.max(best, child.compute());
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Оценка живой позиции: счёт, затем близость головы к полезной еде с учётом перехода через границы поля
+     */
+    private static double evaluate(Game game) {
+        int width = game.getField().getWidth();
+        int height = game.getField().getHeight();
+        int headX = game.getSnake().getHeadX();
+        int headY = game.getSnake().getHeadY();
+        int nearest = width + height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                CellContent content = game.getField().getContent(x, y);
+                if (!(content instanceof FoodCellContent) || ((FoodCellContent) content).nutrition <= 0) continue;
+                int dx = Math.abs(x - headX);
+                int dy = Math.abs(y - headY);
+                nearest = Math.min(nearest, Math.min(dx, width - dx) + Math.min(dy, height - dy));
+            }
+        }
+        return game.getScore() * SCORE_WEIGHT - nearest;
+    }
+}
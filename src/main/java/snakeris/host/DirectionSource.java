@@ -0,0 +1,16 @@
+package snakeris.host;
+
+import snakeris.Direction;
+import snakeris.logic.Game;
+
+/**
+ * Источник направления змейки для сессии: игрок, бот или обучаемая модель
+ */
+public interface DirectionSource {
+    /**
+     * Вызывается перед каждым тактом игры в потоке хоста
+     * @param game игра сессии
+     * @return новое направление или {@code null}, если направление не меняется
+     */
+    Direction next(Game game);
+}
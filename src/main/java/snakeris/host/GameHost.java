@@ -0,0 +1,192 @@
+package snakeris.host;
+
+import snakeris.logic.Game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Хост множества независимых игр в одной JVM.
+ * Такт хоста {@link #tick()} выполняет по одному такту каждой идущей сессии, распределяя сессии по ядрам
+ *  через {@link ForkJoinPool}: пачки сессий делятся пополам, свободные потоки забирают половины у занятых.
+ * Методы хоста вызываются из одного управляющего потока, слушатели игр вызываются в потоках пула.
+ * <p>
+ * Цель по памяти - не больше {@link #SESSION_MEMORY_TARGET} байт на сессию с полем 20x30 (ObjectGrid), т.е. около 65 000 сессий на гигабайт кучи.
+ * Замер - {@code snakeris.benchmark.SessionFootprint} в профиле benchmark, пропускная способность - {@code HostBenchmark}
+ *  и {@link #getTicksPerSecond()}.
+ */
+public class GameHost implements AutoCloseable {
+    /**
+     * Целевой объём памяти сессии с полем 20x30, байт
+     */
+    public static final int SESSION_MEMORY_TARGET = 16 * 1024;
+    /**
+     * Сколько сессий задача пула тактует сама, не деля дальше
+     */
+    private static final int SESSIONS_PER_TASK = 32;
+
+    private final ForkJoinPool pool;
+    /**
+     * Все сессии в порядке добавления, включая завершённые, пока они не забраны {@link #drainFinished()}
+     */
+    private final List<GameSession> sessions = new ArrayList<>();
+    /**
+     * Идущие сессии, первые {@link #runningCount} элементов
+     */
+    private GameSession[] running = new GameSession[16];
+    private int runningCount = 0;
+    private int nextId = 0;
+    /**
+     * Сколько тактов сессий выполнено и сколько наносекунд на это ушло
+     */
+    private long totalTicks = 0;
+    private long totalNanos = 0;
+
+    /**
+     * Хост с потоком на каждое ядро
+     */
+    public GameHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism количество потоков пула, больше 0
+     */
+    public GameHost(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Добавляет игру в хост. Игра начинает получать такты со следующего {@link #tick()}.
+     * @param game игра, которая больше нигде не тактуется
+     * @param input источник направлений змейки
+     * @return сессия игры
+     */
+    public GameSession addSession(Game game, DirectionSource input) {
+        if (game == null || input == null) throw new NullPointerException("Game or input is null");
+        GameSession session = new GameSession(nextId++, game, input);
+        sessions.add(session);
+        if (!game.isOver()) {
+            if (runningCount == running.length) {
+                GameSession[] copy = new GameSession[running.length * 2];
+                System.arraycopy(running, 0, copy, 0, runningCount);
+                running = copy;
+            }
+            running[runningCount++] = session;
+        }
+        return session;
+    }
+
+    /**
+     * Выполняет по одному такту всех идущих сессий и убирает завершившиеся из расписания
+     * @return количество идущих сессий после такта
+     */
+    public int tick() {
+        int count = runningCount;
+        if (count == 0) return 0;
+        long start = System.nanoTime();
+        pool.invoke(new TickTask(0, count));
+        totalNanos += System.nanoTime() - start;
+        totalTicks += count;
+        int alive = 0;
+        for (int i = 0; i < count; i++) {
+            if (running[i].getState() == GameSession.State.RUNNING) running[alive++] = running[i];
+        }
+        for (int i = alive; i < count; i++) {
+            running[i] = null;
+        }
+        runningCount = alive;
+        return alive;
+    }
+
+    /**
+     * Выполняет такты, пока есть идущие сессии, но не больше заданного количества
+     * @return количество выполненных тактов хоста
+     */
+    public int run(int maxTicks) {
+        int ticks = 0;
+        while (ticks < maxTicks && tick() > 0) {
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * @return все сессии хоста в порядке добавления
+     */
+    public List<GameSession> getSessions() {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    /**
+     * Убирает из хоста завершённые сессии, чтобы их игры могли быть собраны сборщиком мусора
+     * @return завершённые сессии в порядке добавления
+     */
+    public List<GameSession> drainFinished() {
+        List<GameSession> finished = new ArrayList<>();
+        sessions.removeIf(session -> {
+            if (session.getState() == GameSession.State.RUNNING) return false;
+            finished.add(session);
+            return true;
+        });
+        return finished;
+    }
+
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * @return суммарное количество тактов всех сессий
+     */
+    public long getTotalTicks() {
+        return totalTicks;
+    }
+
+    /**
+     * Пропускная способность хоста: тактов сессий в секунду за всё время работы {@link #tick()}
+     */
+    public double getTicksPerSecond() {
+        return totalNanos == 0 ? 0 : totalTicks * 1e9 / totalNanos;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Останавливает потоки пула
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Такт сессий running[from] .. running[to-1]. Большие диапазоны делятся пополам.
+     */
+    private class TickTask extends RecursiveAction {
+        private final int from, to;
+
+        TickTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SESSIONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    running[i].tick();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TickTask(from, middle), new TickTask(middle, to));
+        }
+    }
+}
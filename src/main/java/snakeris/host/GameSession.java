@@ -0,0 +1,80 @@
+package snakeris.host;
+
+import snakeris.logic.Game;
+
+/**
+ * Сессия хоста {@link GameHost}: игра и источник направлений для неё.
+ * Сессии не разделяют состояние: у каждой своё поле, змейка и генератор еды.
+ * Такт сессии выполняется одним потоком пула, ошибка в сессии останавливает только её.
+ */
+public class GameSession {
+    /**
+     * Состояние сессии
+     */
+    public enum State {
+        /**
+         * Игра идёт, сессия получает такты
+         */
+        RUNNING,
+        /**
+         * Змейка умерла
+         */
+        OVER,
+        /**
+         * Такт бросил исключение, см. {@link #getFailure()}
+         */
+        FAILED
+    }
+
+    private final int id;
+    private final Game game;
+    private final DirectionSource input;
+    private volatile State state;
+    private volatile RuntimeException failure;
+
+    GameSession(int id, Game game, DirectionSource input) {
+        this.id = id;
+        this.game = game;
+        this.input = input;
+        //Уже законченная игра не попадает в расписание хоста и сразу считается завершённой
+        state = game.isOver() ? State.OVER : State.RUNNING;
+    }
+
+    /**
+     * Выполняет один такт игры
+     * @return {@code true} если после такта игра продолжается
+     */
+    boolean tick() {
+        if (state != State.RUNNING) return false;
+        try {
+            if (!game.step(input.next(game))) state = State.OVER;
+        } catch (RuntimeException e) {
+            failure = e;
+            state = State.FAILED;
+        }
+        return state == State.RUNNING;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Игра сессии. Пока сессия в состоянии {@link State#RUNNING}, игру меняет поток хоста:
+     *  читать её безопасно только между вызовами {@link GameHost#tick()}.
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return исключение, остановившее сессию, или {@code null}
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+}
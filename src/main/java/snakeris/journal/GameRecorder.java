@@ -0,0 +1,76 @@
+package snakeris.journal;
+
+import snakeris.Direction;
+import snakeris.logic.Game;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Записывает игру в журнал ({@link Journal}): параметры и зерно поля, затем такты, на которых змейка сменила направление.
+ * Игра должна быть создана на пустом поле (как в {@link Game#Game(int, int, int, long)}) и ещё не сделать ни одного такта,
+ *  а такты должны выполняться только через {@link #step(Direction)}.
+ */
+public class GameRecorder {
+    private final Game game;
+    private final OutputStream out;
+    /**
+     * Такт последней записи
+     */
+    private long lastTick = 0;
+    private boolean finished = false;
+
+    /**
+     * Пишет заголовок журнала
+     * @param game записываемая игра
+     * @param out поток журнала. Буферизация - на стороне вызывающего.
+     * @throws IllegalArgumentException если игра уже начата
+     */
+    public GameRecorder(Game game, OutputStream out) throws IOException {
+        if (game.getTick() != 0) throw new IllegalArgumentException("Game is already started");
+        this.game = game;
+        this.out = out;
+        out.write(Journal.MAGIC);
+        out.write(Journal.VERSION);
+        out.write(game.getField().isSparse() ? Journal.SPARSE : Journal.DENSE);
+        Journal.writeVarLong(out, game.getField().getWidth());
+        Journal.writeVarLong(out, game.getField().getHeight());
+        Journal.writeVarLong(out, game.getInitialLength());
+        Journal.writeVarLong(out, game.getBlocksPeriod());
+        new DataOutputStream(out).writeLong(game.getField().getSeed());
+    }
+
+    /**
+     * Выполняет такт игры {@link Game#step(Direction)} и записывает направление, если оно сменилось
+     * @return {@code true} если змейка жива после хода
+     */
+    public boolean step(Direction dir) throws IOException {
+        if (finished) throw new IllegalStateException("Journal is finished");
+        Direction before = game.getSnake().getDir();
+        boolean alive = game.step(dir);
+        Direction after = game.getSnake().getDir();
+        if (after != before) write(after.ordinal());
+        return alive;
+    }
+
+    /**
+     * Записывает конец журнала на текущем такте. Поток не закрывается.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        write(Journal.END);
+        out.flush();
+        finished = true;
+    }
+
+    private void write(int code) throws IOException {
+        long tick = game.getTick();
+        Journal.writeVarLong(out, (tick - lastTick) * Journal.CODES + code);
+        lastTick = tick;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+}
@@ -0,0 +1,109 @@
+package snakeris.journal;
+
+import snakeris.Direction;
+import snakeris.logic.Field;
+import snakeris.logic.Game;
+import snakeris.logic.grid.ChunkedGrid;
+import snakeris.logic.grid.Grid;
+import snakeris.logic.grid.ObjectGrid;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * Воспроизводит игру из журнала {@link GameRecorder} без интерфейса и задержек между тактами.
+ * Поле создаётся заново с записанным зерном, на записанных тактах змейке передаются записанные направления.
+ */
+public class GameReplayer {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final InputStream in;
+    private final Game game;
+    /**
+     * Такт и код следующей записи журнала
+     */
+    private long nextTick;
+    private int nextCode;
+
+    /**
+     * Читает заголовок журнала и создаёт игру на хранилище записанного вида:
+     *  {@link ObjectGrid} для плотного поля, {@link ChunkedGrid} для разреженного
+     */
+    public GameReplayer(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * Читает заголовок журнала и создаёт игру
+     * @param in поток журнала
+     * @param grids создаёт хранилище ячеек по ширине и высоте поля, {@code null} - хранилище записанного вида
+     * @throws IOException если поток не является журналом игры или хранилище не того вида, на котором игра записана
+     */
+    public GameReplayer(InputStream in, BiFunction<Integer, Integer, Grid> grids) throws IOException {
+        this.in = in;
+        byte[] magic = new byte[Journal.MAGIC.length];
+        DataInputStream data = new DataInputStream(in);
+        data.readFully(magic);
+        if (!Arrays.equals(magic, Journal.MAGIC)) throw new IOException("Not a game journal");
+        int version = data.read();
+        if (version != 1 && version != Journal.VERSION) throw new IOException("Unsupported journal version " + version);
+        int kind = version == 1 ? Journal.DENSE : data.read();
+        if (kind != Journal.DENSE && kind != Journal.SPARSE) throw new IOException("Unknown grid kind in journal " + kind);
+        boolean sparse = kind == Journal.SPARSE;
+        if (grids == null) grids = sparse ? ChunkedGrid::new : ObjectGrid::new;
+        int width = Journal.readVarInt(in);
+        int height = Journal.readVarInt(in);
+        int snakeLength = Journal.readVarInt(in);
+        int blocksPeriod = Journal.readVarInt(in);
+        long seed = data.readLong();
+        Field field = new Field(grids.apply(width, height), seed);
+        //Еда на разреженном и плотном поле выбирается по-разному, на другом хранилище игра разойдётся с записью
+        if (field.isSparse() != sparse) {
+            throw new IOException("Journal was recorded on a " + (sparse ? "sparse" : "dense") + " grid");
+        }
+        game = new Game(field, snakeLength);
+        game.setBlocksPeriod(blocksPeriod);
+        readNext();
+    }
+
+    private void readNext() throws IOException {
+        long entry = Journal.readVarLong(in);
+        nextTick += entry / Journal.CODES;
+        nextCode = (int) (entry % Journal.CODES);
+    }
+
+    /**
+     * Выполняет следующий такт записанной игры
+     * @return {@code false} если журнал закончился или змейка мертва, и такт не выполнен
+     */
+    public boolean step() throws IOException {
+        long tick = game.getTick() + 1;
+        if (game.isOver() || nextCode == Journal.END && tick > nextTick) return false;
+        Direction dir = null;
+        if (tick == nextTick && nextCode != Journal.END) {
+            dir = DIRECTIONS[nextCode];
+            readNext();
+        }
+        game.step(dir);
+        return true;
+    }
+
+    /**
+     * Воспроизводит журнал до конца
+     * @return количество выполненных тактов
+     */
+    public long run() throws IOException {
+        long ticks = 0;
+        while (step()) {
+            ticks++;
+        }
+        return ticks;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+}
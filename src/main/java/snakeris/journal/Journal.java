@@ -0,0 +1,68 @@
+package snakeris.journal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Формат журнала игры.
+ * <pre>
+ * заголовок: "SNKJ", версия (байт), вид хранилища (байт), ширина, высота, начальная длина змейки, период падения блоков (varint),
+ *            зерно (8 байт)
+ * записи:    varint(разница тактов * 5 + код)
+ * </pre>
+ * Запись делается только на такте, где змейка сменила направление: код - номер {@link snakeris.Direction}.
+ * Разница тактов отсчитывается от предыдущей записи (от 0 для первой). Последняя запись с кодом {@link #END}
+ *  отмечает такт, на котором запись закончилась. Смена направления раз в несколько тактов занимает 1-2 байта.
+ * Вид хранилища ({@link #DENSE} или {@link #SPARSE}) нужен потому, что еда на разреженном поле выбирается по-другому:
+ *  журнал воспроизводится только на хранилище того же вида. В журнале версии 1 вида нет, поле плотное.
+ */
+final class Journal {
+    static final byte[] MAGIC = {'S', 'N', 'K', 'J'};
+    static final int VERSION = 2;
+    /**
+     * Виды хранилища поля
+     */
+    static final int DENSE = 0, SPARSE = 1;
+    /**
+     * Код конца журнала
+     */
+    static final int END = 4;
+    /**
+     * Количество кодов записи
+     */
+    static final int CODES = 5;
+
+    private Journal() {
+    }
+
+    /**
+     * Пишет неотрицательное число по 7 бит в байте, младшие биты первыми; старший бит байта - признак продолжения
+     */
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("Negative varint " + value);
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Unexpected end of journal");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in journal");
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value > Integer.MAX_VALUE) throw new IOException("Value out of range in journal: " + value);
+        return (int) value;
+    }
+}
@@ -0,0 +1,16 @@
+package snakeris.listener;
+
+import snakeris.logic.CellChangeBatch;
+
+/**
+ * Слушатель, получающий изменения ячеек пачкой.
+ * Изменения внутри такта ({@link snakeris.logic.Field#beginTick()} - {@link snakeris.logic.Field#commitTick()})
+ * передаются одной пачкой при завершении такта, по одному изменению на ячейку.
+ * Изменения вне такта передаются пачкой из одного изменения.
+ */
+public interface CellBatchListener {
+    /**
+     * @param batch изменённые ячейки. Объект пачки переиспользуется полем, хранить его после вызова нельзя.
+     */
+    void onCellsUpdated(CellChangeBatch batch);
+}
@@ -0,0 +1,16 @@
+package snakeris.listener;
+
+/**
+ * Слушатель, отрабатывающий при удалении собранных рядов тетриса.
+ * Получает одно событие за такт с диапазоном рядов, содержимое которых могло измениться при смещении статических блоков.
+ * Сами изменённые ячейки передаются при завершении такта вместе с остальными изменениями
+ * ({@link CellUpdateListener}, {@link CellBatchListener}).
+ */
+public interface RowsCollapseListener {
+    /**
+     * @param fromRow верхний ряд, в котором изменились ячейки
+     * @param toRow нижний ряд, в котором изменились ячейки
+     * @param removed количество удалённых рядов
+     */
+    void onRowsCollapsed(int fromRow, int toRow, int removed);
+}
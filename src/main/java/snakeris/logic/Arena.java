@@ -0,0 +1,240 @@
+package snakeris.logic;
+
+import snakeris.Direction;
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.SnakeCellContent;
+import snakeris.logic.cell.StaticCellContent;
+import snakeris.logic.exception.SnakeDiedException;
+import snakeris.logic.grid.IndexMap;
+import snakeris.metrics.TickMetrics.Phase;
+import snakeris.metrics.TickProbe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Арена: несколько змеек на одном поле, которые ходят в одном такте.
+ * Как и {@link Game}, продвигается явным вызовом {@link #step(Direction[])}.
+ * <p>
+ * Ход такта одинаков при любом порядке змеек в памяти и потоков:
+ * <ol>
+ *     <li>сдвигаются хвосты всех змеек, поэтому ячейка, освобождённая хвостом, свободна для любой головы в этом такте;</li>
+ *     <li>если две и более головы идут в одну ячейку (лобовое столкновение), погибают все эти змейки;</li>
+ *     <li>остальные головы сдвигаются по возрастанию номера змейки. Голова, попавшая в тело другой змейки
+ *      или в статический блок, не сдвигается, и змейка погибает. Еда съедается в том же порядке,
+ *      поэтому новая еда генерируется одинаково;</li>
+ *     <li>тела погибших змеек превращаются в падающие блоки.</li>
+ * </ol>
+ * Такт стоит O(змеек + изменённых ячеек): змейки хранят только свои ячейки, ячейка змейки находит её через содержимое.
+ */
+public class Arena {
+    private final Field field;
+    /**
+     * Змейки поля на момент создания арены, номер змейки - позиция в списке
+     */
+    private final List<Snake> snakes;
+    /**
+     * Очки за еду по змейкам
+     */
+    private final int[] scores;
+    /**
+     * Очки за удалённые ряды, общие для арены
+     */
+    private int rowsScore = 0;
+    private long tick = 0;
+    private int blocksPeriod = 1;
+    private int alive;
+    /**
+     * Номер змейки, голова которой сейчас сдвигается, или -1
+     */
+    private int mover = -1;
+    /**
+     * Змейки, которые двигают голову в текущем такте, и погибшие в лобовом столкновении
+     */
+    private final boolean[] moving;
+    private final boolean[] crashed;
+    /**
+     * Номер первой змейки по ячейке, в которую идёт её голова
+     */
+    private final IndexMap targets;
+
+    /**
+     * Создаёт змеек на пустом поле: змейки ползут вправо, головы в столбце snakeLength-1,
+     *  ряды змеек распределены по высоте поля равномерно. Добавляет по единице еды на змейку и одну отрицательную.
+     * @param snakeCount количество змеек, не больше половины высоты поля
+     * @param snakeLength начальная длина змеек
+     * @throws IllegalArgumentException если змейки не помещаются на поле
+     */
+    public Arena(Field field, int snakeCount, int snakeLength) {
+        this(placeSnakes(field, snakeCount, snakeLength));
+        field.randomizeFood(1, snakeCount);
+        field.randomizeFood(-1);
+    }
+
+    /**
+     * Создаёт арену на поле с уже добавленными змейками ({@link Snake#Snake(Field, int, int, int, Direction)})
+     * @throws IllegalArgumentException если на поле нет змеек
+     */
+    public Arena(Field field) {
+        if (field.getSnakes().isEmpty()) throw new IllegalArgumentException("Field has no snakes");
+        this.field = field;
+        this.snakes = new ArrayList<>(field.getSnakes());
+        int count = snakes.size();
+        scores = new int[count];
+        moving = new boolean[count];
+        crashed = new boolean[count];
+        targets = new IndexMap(count);
+        for (Snake snake : snakes) {
+            if (!snake.isDead()) alive++;
+        }
+        field.addEatListener(n -> {
+            if (mover >= 0) scores[mover] += n;
+        });
+        field.addRowRemoveListener(n -> rowsScore += Game.rowsScore(n));
+    }
+
+    private static Field placeSnakes(Field field, int snakeCount, int snakeLength) {
+        if (snakeCount <= 0 || snakeCount > field.getHeight() / 2) {
+            throw new IllegalArgumentException("Snake count must be from 1 to " + field.getHeight() / 2);
+        }
+        int spacing = field.getHeight() / snakeCount;
+        for (int i = 0; i < snakeCount; i++) {
+            new Snake(field, snakeLength, snakeLength - 1, i * spacing, Direction.RIGHT);
+        }
+        return field;
+    }
+
+    /**
+     * Выполняет один такт: падение блоков (раз в {@link #blocksPeriod} тактов) и ход всех живых змеек.
+     * Изменения ячеек за такт передаются слушателям поля одной пачкой.
+     * @param dirs новые направления змеек по номерам, {@code null} - направление не меняется.
+     *             Противоположное текущему направление игнорируется.
+     * @return {@code true} если после такта есть живые змейки
+     * @throws IllegalArgumentException если количество направлений не равно количеству змеек
+     * @throws SnakeDiedException если живых змеек нет
+     * @throws IllegalStateException если на поле добавлены змейки после создания арены
+     */
+    public boolean step(Direction[] dirs) {
+        if (field.getSnakes().size() != snakes.size()) throw new IllegalStateException("Snakes were added to the field after the arena was created");
+        if (dirs.length != snakes.size()) throw new IllegalArgumentException("Expected " + snakes.size() + " directions");
+        if (alive == 0) throw new SnakeDiedException();
+        tick++;
+        field.beginTick();
+        try {
+            if (tick % blocksPeriod == 0) {
+                field.action();
+            }
+            TickProbe probe = field.getProbe();
+            long start = probe != null ? System.nanoTime() : 0;
+            try {
+                moveSnakes(dirs);
+            } finally {
+                if (probe != null) probe.phase(Phase.SNAKE_MOVE, start);
+            }
+        } finally {
+            field.commitTick();
+        }
+        return alive > 0;
+    }
+
+    private void moveSnakes(Direction[] dirs) {
+        int count = snakes.size();
+        //Хвосты сдвигаются раньше голов
+        for (int i = 0; i < count; i++) {
+            Snake snake = snakes.get(i);
+            moving[i] = false;
+            crashed[i] = false;
+            if (snake.isDead()) continue;
+            if (dirs[i] != null) snake.setDir(dirs[i]);
+            moving[i] = snake.moveTail();
+        }
+        //Лобовые столкновения: все змейки, идущие в одну ячейку, погибают
+        targets.clear();
+        for (int i = 0; i < count; i++) {
+            if (!moving[i]) continue;
+            int target = snakes.get(i).nextHeadIndex();
+            int first = targets.get(target, -1);
+            if (first >= 0) {
+                crashed[first] = true;
+                crashed[i] = true;
+            } else {
+                targets.put(target, i);
+            }
+        }
+        //Головы сдвигаются по возрастанию номера
+        for (int i = 0; i < count; i++) {
+            if (!moving[i]) continue;
+            Snake snake = snakes.get(i);
+            if (crashed[i] || blocks(snake, field.getContent(snake.nextHeadIndex()))) {
+                snake.die();
+                continue;
+            }
+            mover = i;
+            try {
+                snake.moveHead();
+            } finally {
+                mover = -1;
+            }
+        }
+        //Тела погибших змеек становятся падающими блоками
+        alive = 0;
+        for (Snake snake : snakes) {
+            if (snake.isDead()) snake.dropBody();
+            else alive++;
+        }
+    }
+
+    /**
+     * Останавливает ли содержимое голову змейки: статический блок или тело другой змейки
+     */
+    private static boolean blocks(Snake snake, CellContent content) {
+        return content == StaticCellContent.instance
+                || content instanceof SnakeCellContent && ((SnakeCellContent) content).getSnake() != snake;
+    }
+
+    /**
+     * @param blocksPeriod раз в сколько тактов падают блоки. Должно быть больше 0.
+     */
+    public void setBlocksPeriod(int blocksPeriod) {
+        if (blocksPeriod <= 0) throw new IllegalArgumentException("Blocks period must be positive");
+        this.blocksPeriod = blocksPeriod;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public int getSnakeCount() {
+        return snakes.size();
+    }
+
+    public Snake getSnake(int i) {
+        return snakes.get(i);
+    }
+
+    /**
+     * Очки змейки за съеденную еду
+     */
+    public int getScore(int i) {
+        return scores[i];
+    }
+
+    /**
+     * Очки за удалённые ряды
+     */
+    public int getRowsScore() {
+        return rowsScore;
+    }
+
+    public int getAliveCount() {
+        return alive;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public boolean isOver() {
+        return alive == 0;
+    }
+}
@@ -1,16 +1,16 @@
 package snakeris.logic;
 
 import snakeris.logic.cell.CellContent;
-import snakeris.logic.cell.EmptyCellContent;
 
 /**
- * Ячейка поля. Содержит координаты и содержимое.
+ * Ячейка поля. Является представлением ячейки хранилища поля {@link snakeris.logic.grid.Grid}:
+ * содержит координаты, а содержимое читает и пишет через поле.
+ * Две ячейки равны, если они относятся к одному полю и имеют одинаковые координаты.
  */
 public class Cell {
     private final Field field;
     private final int x;
     private final int y;
-    private CellContent content = EmptyCellContent.instance;
 
     public Cell(Field field, int xPos, int yPos) {
         this.field = field;
@@ -27,17 +27,29 @@ public class Cell {
     }
 
     public CellContent getContent() {
-        return content;
+        return field.getContent(x, y);
     }
 
     public void setContent(CellContent content) {
-        CellContent old = this.content;
-        this.content = content;
+        CellContent old = field.replaceContent(x, y, content);
         field.cellUpdated(this, old);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cell)) return false;
+        Cell cell = (Cell) o;
+        return x == cell.x && y == cell.y && field == cell.field;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * y + x;
+    }
+
     @Override
     public String toString() {
-        return "Cell ["+x+';'+y+"]: "+content.getName();
+        return "Cell ["+x+';'+y+"]: "+getContent().getName();
     }
 }
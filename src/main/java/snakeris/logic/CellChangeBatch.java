@@ -0,0 +1,85 @@
+package snakeris.logic;
+
+import snakeris.logic.cell.CellContent;
+
+import java.util.Arrays;
+
+/**
+ * Пачка изменений ячеек поля: индекс ячейки, содержимое до и после изменения.
+ * Каждая ячейка входит в пачку не больше одного раза.
+ * @see snakeris.listener.CellBatchListener
+ */
+public class CellChangeBatch {
+    private final Field field;
+    private int[] indices = new int[64];
+    private CellContent[] olds = new CellContent[64];
+    private CellContent[] news = new CellContent[64];
+    private int size;
+
+    CellChangeBatch(Field field) {
+        this.field = field;
+    }
+
+    void clear() {
+        Arrays.fill(olds, 0, size, null);
+        Arrays.fill(news, 0, size, null);
+        size = 0;
+    }
+
+    void add(int index, CellContent old, CellContent content) {
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+            olds = Arrays.copyOf(olds, size * 2);
+            news = Arrays.copyOf(news, size * 2);
+        }
+        indices[size] = index;
+        olds[size] = old;
+        news[size] = content;
+        size++;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Индекс изменённой ячейки {@code y*width + x}
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    public int getX(int i) {
+        return indices[i] % field.getWidth();
+    }
+
+    public int getY(int i) {
+        return indices[i] / field.getWidth();
+    }
+
+    public Cell getCell(int i) {
+        return field.getCell(getX(i), getY(i));
+    }
+
+    /**
+     * Содержимое ячейки до изменения (в начале такта)
+     */
+    public CellContent getOld(int i) {
+        return olds[i];
+    }
+
+    /**
+     * Содержимое ячейки после изменения
+     */
+    public CellContent getNew(int i) {
+        return news[i];
+    }
+}
@@ -1,22 +1,60 @@
 package snakeris.logic;
 
 import snakeris.logic.cell.*;
+import snakeris.logic.grid.RowBits;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Падающий блок.
  */
 public class FallingBlock {
     /**
-     * Список ячеек блока, отсортированный по возрастанию высоты
+     * Индексы ячеек блока (y*width+x), первые {@link #size} элементов.
+     * Отсортированы по убыванию индекса, т.е. по возрастанию высоты: при падении нижние ячейки сдвигаются первыми.
      */
-    private final List<Cell> cells = new ArrayList<>();
+    private int[] cells;
+    private int size;
     /**
      * Ссылка на поле
      */
     private final Field field;
+    /**
+     * Показывает, приостановлено ли падение блока в текущем такте.
+     * Флаг общий для всех ячеек блока, поэтому хранится в блоке, а не в содержимом ячеек.
+     */
+    private boolean stopped = false;
+    /**
+     * Содержимое всех ячеек блока. Одно на блок, чтобы не создавать объекты при каждом падении.
+     * По нему же определяется принадлежность ячейки блоку: ячейка блока содержит именно этот объект.
+     */
+    private final FallingBlockCellContent content = new FallingBlockCellContent(this);
+    /**
+     * Форма блока: для каждого ряда блока маска занятых столбцов (слова начиная с {@link #shapeWord}).
+     * Первый элемент - нижний ряд блока. При падении форма не меняется, меняется только {@link #shapeBottom}.
+     */
+    private long[][] shape;
+    /**
+     * Нижний ряд блока на поле, соответствует первому ряду формы {@link #shape}
+     */
+    private int shapeBottom;
+    /**
+     * Номер слова ряда поля, с которого начинаются маски формы
+     */
+    private int shapeWord;
+    /**
+     * Номер блока в графе опоры {@link SupportGraph}. Действителен во время {@link Field#action()}.
+     */
+    int graphId;
+    /**
+     * План падения ({@link #planFall()}): биты номеров ячеек {@link #cells}, в которые при падении попадает
+     *  стоящий раньше в списке поля блок. Такие ячейки при падении не очищаются. Переиспользуется.
+     */
+    private long[] covered = new long[1];
+    /**
+     * План падения построен и ещё не использован
+     */
+    private boolean planned = false;
 
     /**
      * Создаёт падающий блок из заданных ячеек и регистрируется в поле.
@@ -28,16 +66,73 @@ public class FallingBlock {
      * @throws IllegalArgumentException если список ячеек пустой
      */
     public FallingBlock(Collection<Cell> cells, Field field) {
-        if (cells.isEmpty()) throw new IllegalArgumentException("Empty falling block");
+        this(toIndices(cells, field), field, true);
+    }
+
+    /**
+     * Создаёт падающий блок из ячеек с заданными индексами (y*width+x), например из отделённого хвоста змеи
+     * @param cells индексы ячеек блока. Массив не изменяется.
+     * @param field ссылка на поле
+     * @throws IllegalArgumentException если массив пустой
+     * @see #FallingBlock(Collection, Field)
+     */
+    public FallingBlock(int[] cells, Field field) {
+        this(cells.clone(), field, true);
+    }
+
+    /**
+     * @param cells индексы ячеек, массив переходит во владение блока
+     * @param split {@code false} если ячейки заведомо связны и проверять целостность не нужно
+     */
+    private FallingBlock(int[] cells, Field field, boolean split) {
+        if (cells.length == 0) throw new IllegalArgumentException("Empty falling block");
         this.field = field;
-        cells.forEach(cell -> cell.setContent(new FallingBlockCellContent(this)));
+        int width = field.getWidth();
+        for (int index : cells) {
+            field.setContent(index % width, index / width, content);
+        }
         //Ячейки сортируются по возрастанию высоты (убыванию Y) для правильного порядка при падении блока.
-        this.cells.addAll(cells.stream()
-                .sorted(Comparator.comparingInt(Cell::getY).reversed())
-                .collect(Collectors.toList()));
+        Arrays.sort(cells);
+        for (int i = 0, j = cells.length - 1; i < j; i++, j--) {
+            int t = cells[i];
+            cells[i] = cells[j];
+            cells[j] = t;
+        }
+        this.cells = cells;
+        this.size = cells.length;
+        field.addFallingBlock(this);
+        //Проверка целостности блока. Может разделить блок на несколько если есть отделённые группы ячеек
+        if (split) split(-1);
+    }
+
+    /**
+     * Копия блока для копии поля {@link Field#fork()}. Ячейки поля не меняются, блок добавляется в конец списка поля.
+     */
+    FallingBlock(FallingBlock parent, Field field) {
+        this.field = field;
+        cells = Arrays.copyOf(parent.cells, parent.size);
+        size = parent.size;
+        stopped = parent.stopped;
         field.addFallingBlock(this);
-        //Проверка целостности блока. Может разделить блок на два если есть отделённая группа ячеек
-        checkAndSeparate();
+    }
+
+    /**
+     * Восстанавливает блок из снимка {@link GameSnapshot}: ячейки заведомо связны, блок добавляется в конец списка поля
+     * @param cells индексы ячеек блока, массив переходит во владение блока
+     */
+    static FallingBlock restore(int[] cells, Field field, boolean stopped) {
+        FallingBlock block = new FallingBlock(cells, field, false);
+        block.stopped = stopped;
+        return block;
+    }
+
+    private static int[] toIndices(Collection<Cell> cells, Field field) {
+        int[] indices = new int[cells.size()];
+        int i = 0;
+        for (Cell cell : cells) {
+            indices[i++] = cell.getY() * field.getWidth() + cell.getX();
+        }
+        return indices;
     }
 
     /**
@@ -46,18 +141,12 @@ public class FallingBlock {
      * @return {@code true} если блок трансформировался
      */
     public boolean tryTransform() {
-        boolean shouldTransform = false;
-        for (Cell cell : cells) {
-            Cell lower = field.getCell(cell.getX(), cell.getY() + 1);
-            if (lower == null) {
-                shouldTransform = true;
-                break;
-            }
-            CellContent content = lower.getContent();
-            if (content.transformsBlock()) {
-                shouldTransform = true;
-                break;
-            }
+        if (shape == null) buildShape();
+        //Нижний ряд блока на дне поля
+        boolean shouldTransform = shapeBottom == field.getHeight() - 1;
+        //Под каким-то рядом блока есть статический блок: маска ряда блока пересекается с битовой картой ряда ниже
+        for (int i = 0; i < shape.length && !shouldTransform; i++) {
+            shouldTransform = field.hasStatic(shapeBottom - i + 1, shape[i], shapeWord);
         }
         if (shouldTransform) {
             transform();
@@ -70,8 +159,9 @@ public class FallingBlock {
      * Трансформирует блок в статический
      */
     public void transform() {
-        for (Cell cell : cells) {
-            cell.setContent(StaticCellContent.instance);
+        int width = field.getWidth();
+        for (int i = 0; i < size; i++) {
+            field.setContent(cells[i] % width, cells[i] / width, StaticCellContent.instance);
         }
     }
 
@@ -80,61 +170,110 @@ public class FallingBlock {
      * @return true сли блок остановлен
      */
     public boolean tryStop() {
-        boolean canStop = false;
-        for (Cell cell : cells) {
-            Cell lower = field.getCell(cell.getX(), cell.getY() + 1);
-            CellContent content = lower.getContent();
-            if (content.stopsFallingBlock()) {
-                canStop = true;
-                break;
+        //Блок, который не трансформировался, не стоит на дне, поэтому под каждой ячейкой есть ряд
+        int width = field.getWidth();
+        for (int i = 0; i < size; i++) {
+            if (field.getContent(cells[i] + width).stopsFallingBlock()) {
+                stop();
+                return true;
             }
         }
-        if (canStop) {
-            stop();
-            return true;
-        }
         return false;
     }
 
     /**
      * Блок останавливается и не падает
      */
-    private void stop() {
-        cells.stream()
-                .map(Cell::getContent)
-                .map(content -> (FallingBlockCellContent) content)
-                .forEach(content -> content.setStopped(true));
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Строит план падения: какие ячейки блока займёт вышестоящий блок, который падает раньше в этом такте.
+     * Только читает поле, поэтому планы разных блоков строятся параллельно ({@link Field#action()}).
+     * Действителен до падения блока: положение блоков, их остановка и {@link #graphId} должны быть актуальны.
+     */
+    void planFall() {
+        int width = field.getWidth();
+        int words = (size + 63) >>> 6;
+        if (covered.length < words) {
+            covered = new long[words];
+        } else {
+            Arrays.fill(covered, 0, words, 0);
+        }
+        for (int i = 0; i < size; i++) {
+            int above = cells[i] - width;
+            if (above < 0) continue;
+            CellContent cont = field.getContent(above);
+            if (!(cont instanceof FallingBlockCellContent)) continue;
+            FallingBlock block = ((FallingBlockCellContent) cont).getBlock();
+            if (block != this && !block.stopped && block.graphId < graphId) covered[i >>> 6] |= 1L << i;
+        }
+        planned = true;
     }
 
     /**
-     * Блок падает на 1 вниз
+     * Блок падает на 1 вниз. Если построен план {@link #planFall()}, очищаемые ячейки берутся из него.
      */
     public void fall() {
-        cells.replaceAll(cell -> {
-            FallingBlockCellContent cont = (FallingBlockCellContent) cell.getContent();
-            Cell lower = field.getCell(cell.getX(), cell.getY() + 1);
-            FoodCellContent food = lower.getContent() instanceof FoodCellContent
-                    ? (FoodCellContent) lower.getContent() : null;
-            lower.setContent(new FallingBlockCellContent(this));
-            if (cont.getBlock() == this) {
-                cell.setContent(EmptyCellContent.instance);
+        int width = field.getWidth();
+        for (int i = 0; i < size; i++) {
+            int index = cells[i];
+            int lower = index + width;
+            //Ячейку мог уже занять вышестоящий блок, упавший раньше в этом такте
+            boolean vacate = planned ? (covered[i >>> 6] & 1L << i) == 0 : field.getContent(index) == content;
+            CellContent lowerContent = field.getContent(lower);
+            FoodCellContent food = lowerContent instanceof FoodCellContent ? (FoodCellContent) lowerContent : null;
+            field.setContent(lower % width, lower / width, content);
+            if (vacate) {
+                field.setContent(index % width, index / width, EmptyCellContent.instance);
             }
-            if (food!=null) field.randomizeFood(food.nutrition);
-            return lower;
-        });
+            if (food != null) field.randomizeFood(food.nutrition);
+            cells[i] = lower;
+        }
+        planned = false;
+        shapeBottom++;
     }
 
     /**
      * Удаляет с клеток флаги о том что блок остановился
      */
     public void clearStopped() {
-        for (Cell cell : cells) {
-            ((FallingBlockCellContent) cell.getContent()).setStopped(false);
-        }
+        stopped = false;
     }
 
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return ячейки блока. Ячейки создаются при каждом вызове.
+     */
     public Collection<Cell> getCells() {
-        return Collections.unmodifiableList(cells);
+        List<Cell> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(field.getCell(cells[i] % field.getWidth(), cells[i] / field.getWidth()));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param i номер ячейки от 0 до {@link #getSize()}, ячейки упорядочены снизу вверх
+     * @return индекс ячейки на поле (y*width+x)
+     */
+    int getCellIndex(int i) {
+        return cells[i];
+    }
+
+    /**
+     * Содержимое ячеек блока
+     */
+    FallingBlockCellContent getContent() {
+        return content;
     }
 
     /**
@@ -147,48 +286,136 @@ public class FallingBlock {
 
     /**
      * Удаляет ячейку блока. Проверяет целостность блока и разделяет на части при необходимости.
+     * Содержимое удалённой ячейки не меняется, его перезаписывает вызывающий (змея или статический блок).
      * @param cell удаляемая ячейка
      */
     public void removeCell(Cell cell) {
-        cells.remove(cell);
-        if (cells.isEmpty()) field.removeFallingBlock(this);
-        else checkAndSeparate();
+        int index = cell.getY() * field.getWidth() + cell.getX();
+        int pos = indexOf(index);
+        if (pos < 0) return;
+        System.arraycopy(cells, pos + 1, cells, pos, size - pos - 1);
+        size--;
+        shape = null;
+        if (size == 0) field.removeFallingBlock(this);
+        //Если соседи удалённой ячейки связаны вокруг неё, блок не разрывается и обход не нужен
+        else if (!neighboursConnected(cell.getX(), cell.getY())) split(index);
+    }
+
+    private int indexOf(int index) {
+        for (int i = 0; i < size; i++) {
+            if (cells[i] == index) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Принадлежит ли ячейка блоку. Ячейки блока содержат {@link #content}.
+     */
+    private boolean contains(int x, int y) {
+        return x >= 0 && x < field.getWidth() && y >= 0 && y < field.getHeight()
+                && field.getContent(y * field.getWidth() + x) == content;
+    }
+
+    /**
+     * Проверяет, остаются ли соседние ячейки блока связанными друг с другом через 8 окружающих ячеек.
+     * Соседи по стороне связаны через угловую ячейку между ними, если она тоже принадлежит блоку.
+     * @return {@code true} если соседи образуют не больше одной группы, т.е. удаление ячейки точно не разделяет блок
+     */
+    private boolean neighboursConnected(int x, int y) {
+        //Соседи по кругу: сверху, справа, снизу, слева; углы между ними
+        boolean[] sides = {contains(x, y - 1), contains(x + 1, y), contains(x, y + 1), contains(x - 1, y)};
+        boolean[] corners = {contains(x + 1, y - 1), contains(x + 1, y + 1), contains(x - 1, y + 1), contains(x - 1, y - 1)};
+        int present = 0, joined = 0;
+        for (int i = 0; i < 4; i++) {
+            if (!sides[i]) continue;
+            present++;
+            if (corners[i] && sides[(i + 1) & 3]) joined++;
+        }
+        return present - joined <= 1;
     }
 
     /**
-     * Проверяет целостность блока и разделяет его на два при необходимости
+     * Ищет компоненты связности блока одним итеративным обходом в ширину.
+     * Первая компонента (с нижней ячейкой) остаётся в блоке, из каждой из остальных создаётся новый блок.
+     * Принадлежность блоку определяется по содержимому ячеек поля, посещённые ячейки отмечаются в {@link Field#getMarks()}.
+     * @param removed удалённая ячейка, содержимое которой ещё не перезаписано, или -1
      */
-    private void checkAndSeparate() {
-        Set<Cell> separated = integrityCheck();
-        if (separated.isEmpty()) return;
-        cells.removeAll(separated);
-        new FallingBlock(separated, field);
+    private void split(int removed) {
+        RowBits marks = field.getMarks();
+        int width = field.getWidth();
+        int height = field.getHeight();
+        if (removed >= 0) marks.set(removed % width, removed / width);
+        //Очередь обхода. Ячейки каждой компоненты лежат подряд, starts - начала компонент
+        int[] queue = new int[size];
+        int[] starts = new int[size + 1];
+        int components = 0;
+        int tail = 0;
+        for (int i = 0; i < size && tail < size; i++) {
+            int start = cells[i];
+            if (marks.get(start % width, start / width)) continue;
+            starts[components++] = tail;
+            marks.set(start % width, start / width);
+            queue[tail++] = start;
+            for (int head = starts[components - 1]; head < tail; head++) {
+                int x = queue[head] % width;
+                int y = queue[head] / width;
+                if (x > 0) tail = visit(x - 1, y, queue, tail, marks);
+                if (x < width - 1) tail = visit(x + 1, y, queue, tail, marks);
+                if (y < height - 1) tail = visit(x, y + 1, queue, tail, marks);
+                if (y > 0) tail = visit(x, y - 1, queue, tail, marks);
+            }
+        }
+        starts[components] = tail;
+        if (removed >= 0) marks.clear(removed % width, removed / width);
+        for (int i = 0; i < tail; i++) {
+            marks.clear(queue[i] % width, queue[i] / width);
+        }
+        if (components == 1) return;
+        //Первая компонента остаётся в блоке
+        int[] kept = Arrays.copyOfRange(queue, 0, starts[1]);
+        Arrays.sort(kept);
+        size = kept.length;
+        for (int i = 0; i < size; i++) {
+            cells[i] = kept[size - 1 - i];
+        }
+        shape = null;
+        for (int c = 1; c < components; c++) {
+            new FallingBlock(Arrays.copyOfRange(queue, starts[c], starts[c + 1]), field, false);
+        }
     }
 
     /**
-     * Проверяет целостность блока.
-     * @return отделённые клетки, которые нужно выделить в отдельный блок
+     * Добавляет в очередь обхода ячейку блока, если она ещё не посещена
+     * @return новый конец очереди
      */
-    private Set<Cell> integrityCheck() {
-        Set<Cell> separated = new HashSet<>(cells);
-        integrityCheck(cells.get(0), separated);
-        return separated;
+    private int visit(int x, int y, int[] queue, int tail, RowBits marks) {
+        if (marks.get(x, y) || field.getContent(y * field.getWidth() + x) != content) return tail;
+        marks.set(x, y);
+        queue[tail] = y * field.getWidth() + x;
+        return tail + 1;
     }
 
     /**
-     * Рекурсивная фунция, обходит блоки от начального, проверяя ячейки в 4 направлениях
-     * @param cell текущая ячейка для проверки
-     * @param rest непроверенные ячейки блока
+     * Строит маски рядов {@link #shape} по текущим ячейкам блока
      */
-    private void integrityCheck(Cell cell, Set<Cell> rest) {
-        if (cell == null) return;
-        if (!cells.contains(cell)) return;
-        if (!rest.remove(cell)) return;
-        int x = cell.getX();
-        int y = cell.getY();
-        integrityCheck(field.getCell(x - 1, y), rest);
-        integrityCheck(field.getCell(x + 1, y), rest);
-        integrityCheck(field.getCell(x, y + 1), rest);
-        integrityCheck(field.getCell(x, y - 1), rest);
+    private void buildShape() {
+        int width = field.getWidth();
+        int bottom = 0, top = Integer.MAX_VALUE, left = Integer.MAX_VALUE, right = 0;
+        for (int i = 0; i < size; i++) {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+            bottom = Math.max(bottom, y);
+            top = Math.min(top, y);
+            left = Math.min(left, x);
+            right = Math.max(right, x);
+        }
+        shapeBottom = bottom;
+        shapeWord = left >>> 6;
+        long[][] rows = new long[bottom - top + 1][(right >>> 6) - shapeWord + 1];
+        for (int i = 0; i < size; i++) {
+            int x = cells[i] % width;
+            rows[bottom - cells[i] / width][(x >>> 6) - shapeWord] |= 1L << x;
+        }
+        shape = rows;
     }
 }
@@ -1,12 +1,26 @@
 package snakeris.logic;
 
+import snakeris.listener.CellBatchListener;
 import snakeris.listener.CellUpdateListener;
+import snakeris.listener.RowsCollapseListener;
 import snakeris.logic.cell.*;
+import snakeris.logic.grid.FreeCellIndex;
+import snakeris.logic.grid.Grid;
+import snakeris.logic.grid.ObjectGrid;
+import snakeris.logic.grid.RowBits;
+import snakeris.logic.grid.SparseGrid;
+import snakeris.metrics.TickMetrics;
+import snakeris.metrics.TickMetrics.Phase;
+import snakeris.metrics.TickProbe;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
@@ -15,36 +29,93 @@ import java.util.stream.IntStream;
  */
 public class Field {
     /**
-     * Массив ячеек поля размером width*height.
-     * Обращение cells[x][y] таким образом, это массив столбцов
+     * Хранилище содержимого ячеек поля размером width*height.
+     * Ячейки хранятся по рядам, индекс ячейки {@code y*width + x}
      */
-    private Cell[][] cells;
+    private final Grid grid;
     /**
-     * Ширина поля (размер массива столбцов {@link #cells})
+     * Ширина поля
      */
     private final int width;
     /**
-     * Высота поля (размер столбца в массиве {@link #cells})
+     * Высота поля
      */
     private final int height;
     /**
-     * Используется для генерации положения еды
+     * Зерно генератора {@link #foodRandom}
      */
-    private final Random foodRandom = new Random();
+    private final long seed;
     /**
-     * Ссылка на змейку. В этом классе пока не нужна т.к. управляется из основного класа {@link snakeris.Main}
+     * Используется для генерации положения еды. Других источников случайности в логике игры нет,
+     *  поэтому поле с тем же зерном при тех же действиях ведёт себя так же.
      */
-    private Snake snake;
+    private final GameRandom foodRandom;
+    /**
+     * Пустые ячейки поля. Обновляется при каждом изменении содержимого, используется для генерации еды.
+     * Для разреженного хранилища не создаётся, см. {@link #sparse}.
+     */
+    private final FreeCellIndex freeCells;
+    /**
+     * Хранилище, если оно разреженное ({@link SparseGrid}), иначе {@code null}.
+     * Пустые ячейки разреженного хранилища не отслеживаются: еда ставится в случайную ячейку, если она пуста,
+     *  а после нескольких неудачных попыток - в случайную из пустых ячеек, найденных хранилищем.
+     */
+    private final SparseGrid sparse;
+    /**
+     * Битовая карта статических блоков по рядам.
+     * Позволяет проверять заполненность рядов и опору падающих блоков операциями над словами.
+     */
+    private final RowBits staticCells;
+    /**
+     * Верхний ряд, в котором есть статический блок, или height, если статических блоков нет.
+     * Еда генерируется только выше этого ряда.
+     */
+    private int topStaticRow;
+    /**
+     * Змейки на поле в порядке добавления. Порядок определяет порядок ходов на арене {@link Arena}.
+     */
+    private final List<Snake> snakes = new ArrayList<>();
     /**
      * Список падающих блоков на поле. Поле отвечает за падение блоков.
      */
-    private List<FallingBlock> fallingBlocks = new LinkedList<>();
+    private final List<FallingBlock> fallingBlocks = new ArrayList<>();
+    /**
+     * Граф опоры падающих блоков, перестраивается в каждом {@link #action()}
+     */
+    private final SupportGraph supportGraph = new SupportGraph(this);
     /**
      * Слушатели обновления ячеек. Каждый раз при обновлении содержимого ячейки оповещаются все слушатели.
+     * Внутри такта оповещение откладывается до {@link #commitTick()}, по одному вызову на изменённую ячейку.
      * @see #cellUpdated(Cell, CellContent)
-     * @see snakeris.ui.FieldPaneMapping
      */
     private final List<CellUpdateListener> cellListeners = new ArrayList<>();
+    /**
+     * Слушатели, получающие изменения ячеек пачкой: за такт или по одному изменению вне такта.
+     * @see snakeris.ui.FieldPaneMapping
+     */
+    private final List<CellBatchListener> batchListeners = new ArrayList<>();
+    /**
+     * Вложенность тактов. Если больше 0, изменения ячеек копятся до завершения такта.
+     * @see #beginTick()
+     */
+    private int tickDepth = 0;
+    /**
+     * Ячейки, изменённые в текущем такте
+     */
+    private final RowBits dirtyCells;
+    /**
+     * Индексы изменённых в такте ячеек в порядке первого изменения
+     */
+    private int[] dirtyIndices = new int[64];
+    /**
+     * Содержимое изменённых ячеек на начало такта
+     */
+    private CellContent[] dirtyOld = new CellContent[64];
+    private int dirtyCount = 0;
+    /**
+     * Пачка изменений, передаваемая слушателям {@link #batchListeners}. Переиспользуется.
+     */
+    private final CellChangeBatch batch = new CellChangeBatch(this);
     /**
      * Слушатели, оповещаемые когда змейка ест еду. Принимают питательность съеденной еды
      * @see #onFoodEaten(int)
@@ -55,29 +126,122 @@ public class Field {
      * Принимают количество рядов, которое было изменено
      */
     private final List<Consumer<Integer>> rowRemoveListeners = new ArrayList<>();
+    /**
+     * Слушатели смещения статических блоков при удалении рядов. Оповещаются одним событием за такт.
+     * Ячейки, изменённые смещением, передаются в {@link #cellListeners} и {@link #batchListeners} вместе с остальными изменениями такта.
+     * @see #removeStaticRows()
+     */
+    private final List<RowsCollapseListener> collapseListeners = new ArrayList<>();
+    /**
+     * Верхний ряд, изменённый при удалении рядов в текущем вызове {@link #removeStaticRows()}
+     */
+    private int collapsedFrom;
+    /**
+     * Накопленное за такт событие удаления рядов: диапазон изменённых рядов и количество удалённых рядов
+     */
+    private int pendingCollapseFrom, pendingCollapseTo, pendingCollapseRemoved;
+    /**
+     * Метки ячеек для обходов поля (проверка связности падающих блоков).
+     * Создаётся при первом обходе, после обхода метки снимаются.
+     */
+    private RowBits marks;
+    /**
+     * Измерение тактов или {@code null}, если метрики не подключены
+     * @see #setMetrics(TickMetrics)
+     */
+    private TickProbe probe;
+    /**
+     * Пул для параллельных этапов такта или {@code null}
+     */
+    private ForkJoinPool tickPool;
 
     public Field(int width, int height) {
-        if(width<3 || height<3) throw new IllegalArgumentException("Field size must be 3 or bigger");
-        this.width = width;
-        this.height = height;
-        cells = new Cell[width][];
-        for (int x = 0; x < width; x++) {
-            cells[x] = new Cell[height];
-            for (int y = 0; y < height; y++) {
-                cells[x][y] = new Cell(this, x, y);
-            }
+        this(new ObjectGrid(width, height));
+    }
+
+    /**
+     * Создаёт поле поверх переданного хранилища ячеек со случайным зерном
+     * @param grid пустое хранилище ячеек, например {@link snakeris.logic.grid.PackedGrid}
+     */
+    public Field(Grid grid) {
+        this(grid, new Random().nextLong());
+    }
+
+    /**
+     * Создаёт поле поверх переданного хранилища ячеек
+     * @param grid пустое хранилище ячеек, например {@link snakeris.logic.grid.PackedGrid}
+     * @param seed зерно генератора положения еды
+     */
+    public Field(Grid grid, long seed) {
+        if(grid.getWidth()<3 || grid.getHeight()<3) throw new IllegalArgumentException("Field size must be 3 or bigger");
+        if((long) grid.getWidth()*grid.getHeight() > Integer.MAX_VALUE) throw new IllegalArgumentException("Field is too big");
+        this.seed = seed;
+        this.foodRandom = new GameRandom(seed);
+        this.grid = grid;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        sparse = grid instanceof SparseGrid ? (SparseGrid) grid : null;
+        freeCells = sparse == null ? new FreeCellIndex(width*height) : null;
+        staticCells = new RowBits(width, height);
+        dirtyCells = new RowBits(width, height);
+        topStaticRow = height;
+        addFoodOnRowRemove();
+        setMetrics(TickMetrics.global());
+    }
+
+    /**
+     * Копия поля, см. {@link #fork()}
+     */
+    private Field(Field parent) {
+        grid = parent.grid.fork();
+        width = parent.width;
+        height = parent.height;
+        seed = parent.seed;
+        foodRandom = new GameRandom(parent.foodRandom.getState());
+        sparse = grid instanceof SparseGrid ? (SparseGrid) grid : null;
+        freeCells = parent.freeCells == null ? null : parent.freeCells.fork();
+        staticCells = parent.staticCells.fork();
+        dirtyCells = new RowBits(width, height);
+        topStaticRow = parent.topStaticRow;
+        addFoodOnRowRemove();
+
+        //Змейка и блоки копируются, ячейки хранилища переключаются на содержимое копий
+        Map<CellContent, CellContent> replacements = new IdentityHashMap<>();
+        for (Snake snake : parent.snakes) {
+            Snake copy = new Snake(snake, this);
+            replacements.put(snake.getContent(), copy.getContent());
         }
+        for (FallingBlock block : parent.fallingBlocks) {
+            FallingBlock copy = new FallingBlock(block, this);
+            replacements.put(block.getContent(), copy.getContent());
+        }
+        grid.rebind(replacements);
+    }
 
-        //Когда на поле убираются ряды тетриса, нужно генерировать столько еды, сколько рядов убрано
+    /**
+     * Когда на поле убираются ряды тетриса, нужно генерировать столько еды, сколько рядов убрано
+     */
+    private void addFoodOnRowRemove() {
         rowRemoveListeners.add(n -> {
-            for (int i = 0; i < n-1; i++) {
-                randomizeFood(1);
-            }
+            randomizeFood(1, n-1);
             //Последняя сгенерированная еда имеет питательность равную количеству удалённых рядов.
             randomizeFood(n);
         });
     }
 
+    /**
+     * Независимая копия поля со змейкой, падающими блоками и состоянием генератора еды:
+     *  при тех же действиях копия ведёт себя так же, как поле, и их изменения не влияют друг на друга.
+     * Хранилище ячеек, множество пустых ячеек и битовая карта статических блоков разделяются с полем
+     *  и копируются частями при первой записи (дёшево для {@link snakeris.logic.grid.PackedGrid},
+     *  {@link ObjectGrid} копируется целиком). Змейка и блоки копируются сразу, слушатели и метрики не копируются.
+     * @throws IllegalStateException если идёт такт
+     */
+    public Field fork() {
+        if(tickDepth > 0) throw new IllegalStateException("Fork in the middle of a tick");
+        return new Field(this);
+    }
+
     public int getWidth() {
         return width;
     }
@@ -87,13 +251,180 @@ public class Field {
     }
 
     /**
-     * Возвращает ячейку по координатам. Инкапсулирует массив {@link #cells}.
-     * Массив не должен меняться, меняться может содержимое ячеек.
+     * Подключает метрики тактов поля. Без метрик такты не измеряются.
+     * @param metrics метрики, могут быть общими для нескольких полей, или {@code null}, чтобы отключить измерение
+     * @throws IllegalStateException если идёт такт
+     */
+    public void setMetrics(TickMetrics metrics) {
+        if(tickDepth > 0) throw new IllegalStateException("Metrics change in the middle of a tick");
+        probe = metrics == null ? null : metrics.newProbe();
+    }
+
+    /**
+     * Подключает пул потоков для этапов такта, которые на больших полях занимают заметное время и только читают поле:
+     *  построение графа опоры падающих блоков ({@link SupportGraph}) и планы их падения ({@link FallingBlock#planFall()}).
+     * Этапы делят работу на части и собирают результаты в исходном порядке, поэтому такт с пулом даёт тот же результат, что и без него.
+     * Запись ячеек по планам, генерация еды и удаление рядов остаются в потоке такта: от их порядка зависят порядок пустых ячеек и случайные числа.
+     * Небольшие этапы выполняются без пула. Копия поля {@link #fork()} пул не наследует.
+     * @param pool пул или {@code null}, чтобы выполнять такт в одном потоке
+     * @throws IllegalStateException если идёт такт
+     */
+    public void setTickPool(ForkJoinPool pool) {
+        if(tickDepth > 0) throw new IllegalStateException("Tick pool change in the middle of a tick");
+        tickPool = pool;
+    }
+
+    public ForkJoinPool getTickPool() {
+        return tickPool;
+    }
+
+    /**
+     * @return подключённые метрики или {@code null}
+     */
+    public TickMetrics getMetrics() {
+        return probe == null ? null : probe.getMetrics();
+    }
+
+    /**
+     * Измерение тактов для этапов, выполняемых вне поля (ход змейки)
+     */
+    TickProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Зерно, с которым создано поле
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Возвращает ячейку по координатам. Ячейка - представление ячейки хранилища {@link #grid},
+     * через неё можно менять содержимое.
+     * @return ячейка или {@code null}, если координаты за пределами поля
      */
     public Cell getCell(int x, int y){
-        if(x<0 || x>=cells.length || y<0 || y>=cells[x].length)
+        if(x<0 || x>=width || y<0 || y>=height)
             return null;
-        return cells[x][y];
+        return new Cell(this, x, y);
+    }
+
+    /**
+     * Содержимое ячейки по координатам без создания ячейки
+     */
+    public CellContent getContent(int x, int y){
+        return grid.get(y*width + x);
+    }
+
+    /**
+     * Меняет содержимое ячейки и оповещает слушателей, как {@link Cell#setContent(CellContent)}.
+     * Внутри такта ячейка не создаётся: оповещение откладывается до {@link #commitTick()}.
+     */
+    public void setContent(int x, int y, CellContent content){
+        CellContent old = replaceContent(x, y, content);
+        if(tickDepth == 0) cellUpdated(new Cell(this, x, y), old);
+    }
+
+    /**
+     * Содержимое ячейки по индексу хранилища (y*width+x)
+     */
+    CellContent getContent(int index){
+        return grid.get(index);
+    }
+
+    /**
+     * Первая непустая ячейка с индексом (y*width+x) не меньше from.
+     * Для разреженного хранилища пустые куски пропускаются, поэтому обход всех непустых ячеек
+     *  стоит порядка их количества, а не площади поля.
+     * @return индекс ячейки или -1, если непустых ячеек дальше нет
+     */
+    public int nextNonEmpty(int from){
+        if(sparse != null) return sparse.nextOccupied(from);
+        int cells = width*height;
+        for (int i = Math.max(from, 0); i < cells; i++) {
+            if(grid.get(i) != EmptyCellContent.instance) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Хранится ли поле разреженно ({@link SparseGrid}). Еда на разреженном поле выбирается по-другому,
+     *  поэтому игра с тем же зерном и теми же ходами на разреженном и плотном поле идёт по-разному.
+     */
+    public boolean isSparse(){
+        return sparse != null;
+    }
+
+    /**
+     * Пустые ячейки поля в порядке, от которого зависит выбор ячейки для еды
+     * @return множество пустых ячеек или {@code null} для разреженного хранилища
+     */
+    FreeCellIndex getFreeCells(){
+        return freeCells;
+    }
+
+    GameRandom getFoodRandom(){
+        return foodRandom;
+    }
+
+    /**
+     * @return падающие блоки в порядке их обработки
+     */
+    List<FallingBlock> getFallingBlocks(){
+        return fallingBlocks;
+    }
+
+    /**
+     * Идёт ли такт ({@link #beginTick()})
+     */
+    boolean isInTick(){
+        return tickDepth > 0;
+    }
+
+    /**
+     * Метки ячеек для обходов. Обход обязан снять поставленные метки.
+     */
+    RowBits getMarks(){
+        if(marks == null) marks = new RowBits(width, height);
+        return marks;
+    }
+
+    /**
+     * Записывает содержимое в хранилище без оповещения слушателей
+     * @return предыдущее содержимое ячейки
+     */
+    CellContent replaceContent(int x, int y, CellContent content){
+        int index = y*width + x;
+        CellContent old = grid.set(index, content);
+        if(tickDepth > 0 && !dirtyCells.get(x, y)) {
+            dirtyCells.set(x, y);
+            if(dirtyCount == dirtyIndices.length) {
+                dirtyIndices = Arrays.copyOf(dirtyIndices, dirtyCount*2);
+                dirtyOld = Arrays.copyOf(dirtyOld, dirtyCount*2);
+            }
+            dirtyIndices[dirtyCount] = index;
+            dirtyOld[dirtyCount++] = old;
+        }
+        if(freeCells != null) {
+            if(old == EmptyCellContent.instance) {
+                if(content != EmptyCellContent.instance) freeCells.remove(index);
+            } else if(content == EmptyCellContent.instance) {
+                freeCells.add(index);
+            }
+        }
+        if(old == StaticCellContent.instance) {
+            if(content != StaticCellContent.instance) {
+                staticCells.clear(x, y);
+                if(y == topStaticRow) {
+                    while (topStaticRow < height && staticCells.count(topStaticRow) == 0) topStaticRow++;
+                }
+            }
+        } else if(content == StaticCellContent.instance) {
+            staticCells.set(x, y);
+            if(y < topStaticRow) topStaticRow = y;
+        }
+        return old;
     }
 
     /**
@@ -102,25 +433,81 @@ public class Field {
      * @see FoodCellContent#nutrition
      */
     public void randomizeFood(int nutrition){
-        List<Cell> emptyCells = new ArrayList<>(width*height);
-        int rowLim;
-        for (rowLim = 0; rowLim < height; rowLim++) rows: {
-            for (int i = 0; i < width; i++) {
-                if(cells[i][rowLim].getContent().getName().equals(StaticCellContent.NAME))
-                    break rows;
-            }
+        randomizeFood(nutrition, 1);
+    }
+
+    /**
+     * Устанавливает в count случайных свободных ячеек еду с заданной питательностью.
+     * Свободными считаются пустые ячейки выше верхнего ряда, в котором есть статический блок.
+     * Если свободных ячеек меньше, еда ставится во все свободные ячейки.
+     * @param nutrition питательность генерируемой еды
+     * @param count количество генерируемой еды
+     * @see FoodCellContent#nutrition
+     */
+    public void randomizeFood(int nutrition, int count){
+        if(count<=0) return;
+        long start = probe != null ? System.nanoTime() : 0;
+        try {
+            placeFood(nutrition, count);
+        } finally {
+            if(probe != null) probe.phase(Phase.FOOD, start);
         }
-        for (Cell[] col : cells) {
-            for (int i = 0; i < rowLim; i++) {
-                Cell cell = col[i];
-                if(cell.getContent()== EmptyCellContent.instance){
-                    emptyCells.add(cell);
-                }
-            }
+    }
+
+    private void placeFood(int nutrition, int count){
+        FoodCellContent food = FoodCellContent.of(nutrition);
+        //Генерация еды не меняет статические блоки, поэтому граница свободной области одна на всю пачку
+        int limit = topStaticRow*width;
+        for (int i = 0; i < count; i++) {
+            int index = randomFreeCell(limit);
+            if(index<0) return;
+            setContent(index % width, index / width, food);
+        }
+    }
+
+    /**
+     * Выбирает случайную пустую ячейку с индексом меньше limit.
+     * Сначала несколько раз выбирает случайную пустую ячейку всего поля и проверяет, подходит ли она.
+     * Если подходящие ячейки попадаются редко, выбирает среди них перебором пустых ячеек.
+     * @return индекс ячейки или -1, если подходящих ячеек нет
+     */
+    private int randomFreeCell(int limit){
+        if(sparse != null) return randomSparseCell(limit);
+        int size = freeCells.size();
+        if(size==0) return -1;
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int index = freeCells.get(foodRandom.nextInt(size));
+            if(index < limit) return index;
+        }
+        int eligible = 0;
+        for (int i = 0; i < size; i++) {
+            if(freeCells.get(i) < limit) eligible++;
+        }
+        if(eligible==0) return -1;
+        int n = foodRandom.nextInt(eligible);
+        for (int i = 0; ; i++) {
+            int index = freeCells.get(i);
+            if(index < limit && n-- == 0) return index;
+        }
+    }
+
+    /**
+     * Выбирает случайную пустую ячейку с индексом меньше limit в разреженном хранилище.
+     * На большом поле почти все ячейки пустые, поэтому обычно подходит первая же случайная ячейка.
+     * Если нет, пустые ячейки пересчитываются хранилищем с пропуском кусков без содержимого.
+     * @param limit начало ряда, выше которого ставится еда
+     * @return индекс ячейки или -1, если подходящих ячеек нет
+     */
+    private int randomSparseCell(int limit){
+        if(limit<=0) return -1;
+        for (int attempt = 0; attempt < 16; attempt++) {
+            int index = foodRandom.nextInt(limit);
+            if(grid.get(index) == EmptyCellContent.instance) return index;
         }
-        if(emptyCells.isEmpty()) return;
-        emptyCells.get(foodRandom.nextInt(emptyCells.size()))
-                .setContent(new FoodCellContent(nutrition));
+        int rows = limit / width;
+        int empty = sparse.countEmpty(rows);
+        if(empty==0) return -1;
+        return sparse.findEmpty(foodRandom.nextInt(empty), rows);
     }
 
     public void addCellListener(CellUpdateListener listener){
@@ -135,10 +522,91 @@ public class Field {
         rowRemoveListeners.add(listener);
     }
 
+    public void addRowsCollapseListener(RowsCollapseListener listener){
+        collapseListeners.add(listener);
+    }
+
+    public void addBatchListener(CellBatchListener listener){
+        batchListeners.add(listener);
+    }
+
+    /**
+     * Вне такта сразу оповещает слушателей об изменении ячейки. Внутри такта изменение уже учтено в {@link #replaceContent},
+     * слушатели будут оповещены в {@link #commitTick()}.
+     */
     void cellUpdated(Cell cell, CellContent old){
+        if(tickDepth > 0) return;
+        long start = probe != null ? System.nanoTime() : 0;
         for (CellUpdateListener listener : cellListeners) {
             listener.onCellUpdate(cell, old);
         }
+        if(!batchListeners.isEmpty()) {
+            batch.clear();
+            batch.add(cell.getY()*width + cell.getX(), old, cell.getContent());
+            for (CellBatchListener listener : batchListeners) {
+                listener.onCellsUpdated(batch);
+            }
+        }
+        if(probe != null) probe.phase(Phase.DISPATCH, start);
+    }
+
+    /**
+     * Начинает такт: изменения ячеек копятся и передаются слушателям одной пачкой в {@link #commitTick()}.
+     * Такты могут быть вложенными, оповещение происходит при завершении внешнего такта.
+     */
+    public void beginTick(){
+        if(tickDepth++ == 0 && probe != null) probe.tickStarted();
+    }
+
+    /**
+     * Завершает такт. При завершении внешнего такта оповещает слушателей:
+     * сначала о удалении рядов ({@link RowsCollapseListener}), затем об изменённых ячейках.
+     * Ячейки, содержимое которых в итоге не изменилось, не передаются.
+     */
+    public void commitTick(){
+        if(tickDepth == 0) throw new IllegalStateException("No tick in progress");
+        if(--tickDepth > 0) return;
+        if(probe == null) {
+            dispatchTick();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            dispatchTick();
+        } finally {
+            probe.phase(Phase.DISPATCH, start);
+            probe.tickFinished(batch.size(), fallingBlocks.size());
+        }
+    }
+
+    /**
+     * Оповещает слушателей об изменениях завершённого такта
+     */
+    private void dispatchTick(){
+        if(pendingCollapseRemoved > 0) {
+            int from = pendingCollapseFrom, to = pendingCollapseTo, removed = pendingCollapseRemoved;
+            pendingCollapseRemoved = 0;
+            collapseListeners.forEach(listener -> listener.onRowsCollapsed(from, to, removed));
+        }
+        batch.clear();
+        for (int i = 0; i < dirtyCount; i++) {
+            int index = dirtyIndices[i];
+            dirtyCells.clear(index % width, index / width);
+            CellContent old = dirtyOld[i];
+            dirtyOld[i] = null;
+            CellContent content = grid.get(index);
+            if(!content.equals(old)) batch.add(index, old, content);
+        }
+        dirtyCount = 0;
+        if(batch.isEmpty()) return;
+        for (CellUpdateListener listener : cellListeners) {
+            for (int i = 0; i < batch.size(); i++) {
+                listener.onCellUpdate(batch.getCell(i), batch.getOld(i));
+            }
+        }
+        for (CellBatchListener listener : batchListeners) {
+            listener.onCellsUpdated(batch);
+        }
     }
 
     public void addFallingBlock(FallingBlock block){
@@ -150,38 +618,78 @@ public class Field {
      */
     public void action(){
         if(fallingBlocks.isEmpty()) return;
+        beginTick();
+        long start = probe != null ? System.nanoTime() : 0;
+        try {
+            fallBlocks();
+        } finally {
+            if(probe != null) probe.phase(Phase.FALL, start);
+            commitTick();
+        }
+    }
 
-        //Трансформирует блоки, пока что-то трансформируется
-        // Если в первую итерацию трансформировался блок, в следующую итерацию на него могут упасть другие блоки и т.д.
-        boolean nothingToTransform = false;
-        while (!nothingToTransform && !fallingBlocks.isEmpty()) {
-            if(fallingBlocks.removeIf(FallingBlock::tryTransform)){
-                removeStaticRows();
-            }else {
-                nothingToTransform = true;
-            }
+    /**
+     * Трансформация, остановка и падение блоков. Выполняется внутри такта.
+     * Опора блоков определяется графом {@link SupportGraph}, который строится одним проходом по ячейкам блоков.
+     */
+    private void fallBlocks(){
+        //Трансформирует блоки, лежащие на дне или статических блоках, затем лежащие на них и т.д.
+        // Если после этого удалились ряды, положение блоков изменилось, и граф строится заново
+        while (!fallingBlocks.isEmpty()) {
+            supportGraph.build(fallingBlocks, tickPool);
+            if(!supportGraph.transform(this::afterTransformPass)) break;
         }
 
         //Если все блоки трансформировались, больше делать нечего
         if(fallingBlocks.isEmpty()) return;
 
-        //Останавливает блоки, пока что-то останавливается
-        //Та же логика, что и выше при трансформировании
-        List<FallingBlock> notStopped = new ArrayList<>(fallingBlocks);
-        boolean nothingToStop = false;
-        while (!nothingToStop && !fallingBlocks.isEmpty()) {
-            if(!notStopped.removeIf(FallingBlock::tryStop)){
-                nothingToStop = true;
-            }
+        //Останавливает блоки, лежащие на змейке, и блоки, лежащие на остановленных
+        supportGraph.stop();
+
+        //Все не остановившиеся блоки падают, остановленные чистят флаги об остановке
+        planFalls();
+        for (FallingBlock block : fallingBlocks) {
+            if(!block.isStopped()) block.fall();
+        }
+        for (FallingBlock block : fallingBlocks) {
+            block.clearStopped();
         }
+    }
 
-        //Все оставшиеся не остановившиеся блоки падают
-        notStopped.forEach(FallingBlock::fall);
+    /**
+     * Строит планы падения не остановленных блоков ({@link FallingBlock#planFall()}).
+     * Планы только читают поле, поэтому с пулом такта и большим числом ячеек список блоков делится на части,
+     *  которые планируются параллельно. Сами падения затем выполняются в потоке такта в порядке списка.
+     */
+    private void planFalls(){
+        int cells = 0;
+        for (FallingBlock block : fallingBlocks) {
+            if(!block.isStopped()) cells += block.getSize();
+        }
+        if(tickPool == null || cells < 2*ParallelRanges.CELLS_PER_TASK) {
+            for (FallingBlock block : fallingBlocks) {
+                if(!block.isStopped()) block.planFall();
+            }
+            return;
+        }
+        int count = fallingBlocks.size();
+        //Часть - примерно CELLS_PER_TASK ячеек при среднем размере блока
+        int grain = (int) ((long) ParallelRanges.CELLS_PER_TASK * count / cells);
+        ParallelRanges.run(tickPool, count, grain, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                FallingBlock block = fallingBlocks.get(i);
+                if(!block.isStopped()) block.planFall();
+            }
+        });
+    }
 
-        //Все остановленные блоки чистят флаги об остановке
-        fallingBlocks.stream()
-                .filter(block -> !notStopped.contains(block))
-                .forEach(FallingBlock::clearStopped);
+    /**
+     * Убирает трансформированные блоки из списка и удаляет собранные ряды
+     * @return {@code true} если удалены ряды, т.е. граф опоры устарел
+     */
+    private boolean afterTransformPass(){
+        fallingBlocks.removeIf(supportGraph::isTransformed);
+        return removeStaticRows() > 0;
     }
 
     /**
@@ -194,49 +702,117 @@ public class Field {
 
     /**
      * Удаляет все собранные в тетрисе ряды
+     * @return количество удалённых рядов
+     */
+    private int removeStaticRows(){
+        if(probe == null) return removeFullRows();
+        long start = System.nanoTime();
+        try {
+            int removed = removeFullRows();
+            probe.rowsCleared(removed);
+            return removed;
+        } finally {
+            probe.phase(Phase.ROW_REMOVE, start);
+        }
+    }
+
+    /**
+     * Удаление рядов, см. {@link #removeStaticRows()}
      */
-    private void removeStaticRows(){
+    private int removeFullRows(){
         int removed = 0;
-        for (int y = height-1; y > 0 ;) {
-            boolean filled = true;
-            for (int x = 0; x < width; x++) {
-                if(!cells[x][y].getContent().getName().equals(StaticCellContent.NAME)) {
-                    filled = false;
-                    break;
-                }
-            }
-            if(filled){
+        int lowest = 0;
+        collapsedFrom = height;
+        //Выше верхнего ряда со статическими блоками заполненных рядов нет
+        for (int y = height-1; y > 0 && y >= topStaticRow;) {
+            if(staticCells.isFull(y)){
                 removeStaticRow(y);
+                lowest = Math.max(lowest, y);
                 removed++;
             }else {
                 y--;
             }
         }
+        //Если ничего не удалено, слушатели не оповещаются (иначе генерировалась бы еда с нулевой питательностью)
+        if(removed==0) return 0;
         int res = removed;
+        //Удаление рядов происходит внутри такта (action), событие передаётся при завершении такта
+        if(pendingCollapseRemoved == 0) {
+            pendingCollapseFrom = collapsedFrom;
+            pendingCollapseTo = lowest;
+        } else {
+            pendingCollapseFrom = Math.min(pendingCollapseFrom, collapsedFrom);
+            pendingCollapseTo = Math.max(pendingCollapseTo, lowest);
+        }
+        pendingCollapseRemoved += removed;
         rowRemoveListeners.forEach(listener -> listener.accept(res));
+        return removed;
     }
 
     /**
-     * Удаляет собранный в тетрисе ряд и смещает все вышестоящие статические блоки вниз
+     * Удаляет собранный в тетрисе ряд и смещает все вышестоящие статические блоки вниз.
+     * Обходит только ячейки, где статический блок есть сверху или в самой ячейке (по битовой карте),
+     * и пишет содержимое без оповещения {@link #cellListeners}: об изменении сообщается одним событием {@link RowsCollapseListener}.
+     * Содержимое, на которое падает статический блок, получает {@link CellContent#onStaticFall(Cell, Field)}.
      * @param row удаляемый ряд
      */
     private void removeStaticRow(int row) {
-        for (int y = row; y>0; y--) {
-            for (int x = 0; x < width; x++) {
-                CellContent upperCellContent = cells[x][y - 1].getContent();
-                if(upperCellContent instanceof StaticCellContent) {
-                    cells[x][y].getContent().onStaticFall(cells[x][y], this);
-                    cells[x][y-1].setContent(EmptyCellContent.instance);
-                    cells[x][y].setContent(StaticCellContent.instance);
-                }else if(cells[x][y].getContent() instanceof StaticCellContent){
-                    cells[x][y].setContent(EmptyCellContent.instance);
+        int words = staticCells.getWords();
+        for (int y = row; y>0 && y >= topStaticRow; y--) {
+            for (int i = 0; i < words; i++) {
+                //Уже обработанные столбцы слова
+                long done = 0;
+                long pending;
+                //Слово перечитывается после каждой ячейки, т.к. onStaticFall может изменить статические блоки
+                while ((pending = (staticCells.word(y-1, i) | staticCells.word(y, i)) & ~done) != 0) {
+                    long bit = Long.lowestOneBit(pending);
+                    done |= bit | (bit - 1);
+                    int x = (i << 6) + Long.numberOfTrailingZeros(bit);
+                    if(staticCells.get(x, y-1)) {
+                        Cell cell = getCell(x, y);
+                        cell.getContent().onStaticFall(cell, this);
+                        replaceContent(x, y-1, EmptyCellContent.instance);
+                        replaceContent(x, y, StaticCellContent.instance);
+                        collapsedFrom = Math.min(collapsedFrom, y-1);
+                    }else {
+                        replaceContent(x, y, EmptyCellContent.instance);
+                        collapsedFrom = Math.min(collapsedFrom, y);
+                    }
                 }
             }
         }
     }
 
-    public void setSnake(Snake snake) {
-        this.snake = snake;
+    /**
+     * Есть ли в ряду статический блок в одном из столбцов маски.
+     * Заменяет проверку {@link CellContent#transformsBlock()} для каждой ячейки: этим свойством обладают только статические блоки.
+     * @param y проверяемый ряд
+     * @param mask маска столбцов, см. {@link RowBits#intersects(int, long[], int)}
+     * @param fromWord номер слова ряда, которому соответствует первое слово маски
+     */
+    boolean hasStatic(int y, long[] mask, int fromWord){
+        return staticCells.intersects(y, mask, fromWord);
+    }
+
+    /**
+     * Добавляет змейку к змейкам поля. Вызывается конструктором змейки.
+     */
+    void addSnake(Snake snake) {
+        snakes.add(snake);
+    }
+
+    /**
+     * @return первая змейка поля или {@code null}
+     */
+    Snake getSnake() {
+        return snakes.isEmpty() ? null : snakes.get(0);
+    }
+
+    /**
+     * @return змейки поля в порядке добавления, включая погибшие
+     */
+    public List<Snake> getSnakes() {
+        return Collections.unmodifiableList(snakes);
     }
 
     public void onFoodEaten(int nutrition) {
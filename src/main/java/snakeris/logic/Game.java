@@ -0,0 +1,184 @@
+package snakeris.logic;
+
+import snakeris.Direction;
+import snakeris.logic.exception.SnakeDiedException;
+import snakeris.logic.grid.ObjectGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Игра без привязки к интерфейсу: поле, змейка и счёт.
+ * Игра продвигается на один такт явным вызовом {@link #step(Direction)},
+ * поэтому её можно прогонять с любой скоростью, например для симуляций и ботов.
+ */
+public class Game {
+    /**
+     * Игровое поле
+     */
+    private final Field field;
+    /**
+     * Змейка на поле
+     */
+    private final Snake snake;
+    /**
+     * Начальная длина змейки
+     */
+    private final int initialLength;
+    /**
+     * Номер последнего выполненного такта
+     */
+    private long tick = 0;
+    /**
+     * Раз в сколько тактов падают блоки. Змейка двигается каждый такт.
+     */
+    private int blocksPeriod = 1;
+    /**
+     * Счёт
+     */
+    private int score = 0;
+    /**
+     * Слушатели изменения счёта. Принимают новое значение счёта.
+     */
+    private final List<Consumer<Integer>> scoreListeners = new ArrayList<>();
+
+    /**
+     * Создаёт поле заданного размера, змейку и начальную еду
+     * @param width ширина поля
+     * @param height высота поля
+     * @param snakeLength начальная длина змейки
+     */
+    public Game(int width, int height, int snakeLength) {
+        this(new Field(width, height), snakeLength);
+    }
+
+    /**
+     * Создаёт поле заданного размера с заданным зерном, змейку и начальную еду.
+     * Игры с одинаковыми параметрами и одинаковыми направлениями на каждом такте идут одинаково.
+     * @param width ширина поля
+     * @param height высота поля
+     * @param snakeLength начальная длина змейки
+     * @param seed зерно генератора положения еды
+     */
+    public Game(int width, int height, int snakeLength, long seed) {
+        this(new Field(new ObjectGrid(width, height), seed), snakeLength);
+    }
+
+    /**
+     * Создаёт игру на переданном пустом поле
+     * @param field поле, на котором идёт игра
+     * @param snakeLength начальная длина змейки
+     */
+    public Game(Field field, int snakeLength) {
+        this.field = field;
+        this.initialLength = snakeLength;
+        this.snake = new Snake(snakeLength, field);
+        addFieldListeners();
+        field.randomizeFood(1);
+        field.randomizeFood(-1);
+    }
+
+    /**
+     * Восстанавливает игру из снимка {@link GameSnapshot} на уже заполненном поле
+     */
+    Game(Field field, Snake snake, int initialLength, long tick, int score, int blocksPeriod) {
+        this.field = field;
+        this.snake = snake;
+        this.initialLength = initialLength;
+        this.tick = tick;
+        this.score = score;
+        setBlocksPeriod(blocksPeriod);
+        addFieldListeners();
+    }
+
+    private void addFieldListeners() {
+        field.addEatListener(n -> addScore(n));
+        field.addRowRemoveListener(n -> addScore(rowsScore(n)));
+    }
+
+    /**
+     * Очки за одновременное удаление n рядов
+     */
+    static int rowsScore(int n) {
+        return (2*100+(n-1)*100)*n/2;
+    }
+
+    /**
+     * Выполняет один такт игры: падение блоков (раз в {@link #blocksPeriod} тактов) и ход змейки.
+     * Изменения ячеек за такт передаются слушателям поля одной пачкой ({@link Field#beginTick()}).
+     * @param dir новое направление змейки или {@code null}, если направление не меняется.
+     *            Противоположное текущему направление игнорируется.
+     * @return {@code true} если змейка жива после хода
+     * @throws SnakeDiedException если змейка уже мертва
+     */
+    public boolean step(Direction dir) {
+        if (snake.isDead()) throw new SnakeDiedException();
+        tick++;
+        field.beginTick();
+        try {
+            if (tick % blocksPeriod == 0) {
+                field.action();
+            }
+            if (dir != null) snake.setDir(dir);
+            snake.move();
+        } finally {
+            field.commitTick();
+        }
+        return !snake.isDead();
+    }
+
+    /**
+     * Независимая копия игры для проверки ходов "что будет, если": копия поля {@link Field#fork()}, змейка, такт и счёт.
+     * Слушатели не копируются. Вызывается между тактами.
+     */
+    public Game fork() {
+        Field copy = field.fork();
+        return new Game(copy, copy.getSnake(), initialLength, tick, score, blocksPeriod);
+    }
+
+    private void addScore(int n) {
+        score += n;
+        scoreListeners.forEach(listener -> listener.accept(score));
+    }
+
+    public void addScoreListener(Consumer<Integer> listener) {
+        scoreListeners.add(listener);
+    }
+
+    /**
+     * @param blocksPeriod раз в сколько тактов падают блоки. Должно быть больше 0.
+     */
+    public void setBlocksPeriod(int blocksPeriod) {
+        if (blocksPeriod <= 0) throw new IllegalArgumentException("Blocks period must be positive");
+        this.blocksPeriod = blocksPeriod;
+    }
+
+    public int getBlocksPeriod() {
+        return blocksPeriod;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Snake getSnake() {
+        return snake;
+    }
+
+    public int getInitialLength() {
+        return initialLength;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean isOver() {
+        return snake.isDead();
+    }
+}
@@ -0,0 +1,44 @@
+package snakeris.logic;
+
+/**
+ * Генератор случайных чисел игры с явным состоянием (SplitMix64).
+ * В отличие от {@link java.util.Random} состояние - одно число, которое можно прочитать и восстановить,
+ *  поэтому игру с тем же зерном и теми же действиями игрока можно воспроизвести.
+ */
+public class GameRandom {
+    private long state;
+
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Равномерно распределённое число от 0 до bound (не включительно)
+     * @throws IllegalArgumentException если bound не положительный
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("Bound must be positive");
+        //Умножение 32 случайных бит на bound, значения из неполного последнего интервала отбрасываются
+        long threshold = (1L << 32) % bound;
+        long product;
+        do {
+            product = (nextLong() >>> 32) * bound;
+        } while ((product & 0xFFFFFFFFL) < threshold);
+        return (int) (product >>> 32);
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+}
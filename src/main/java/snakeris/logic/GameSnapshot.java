@@ -0,0 +1,311 @@
+package snakeris.logic;
+
+import snakeris.Direction;
+import snakeris.logic.cell.*;
+import snakeris.logic.grid.ChunkedGrid;
+import snakeris.logic.grid.FreeCellIndex;
+import snakeris.logic.grid.Grid;
+import snakeris.logic.grid.ObjectGrid;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Двоичный снимок полного состояния игры между тактами. Восстановленная игра продолжается так же, как исходная:
+ *  сохраняются порядок тела змейки, рост, направление, список падающих блоков с флагом остановки, еда с питательностью,
+ *  состояние генератора еды и порядок пустых ячеек, по которому он выбирает ячейку.
+ * Слушатели поля и игры в снимок не входят.
+ * <pre>
+ * заголовок: "SNKS", версия, вид хранилища, ширина, высота, начальная длина, период падения блоков (int),
+ *            зерно, состояние генератора, такт (long), счёт (int)
+ * змейка:    направление, мертва (byte), рост, голова x, y, длина (int), ячейки тела от хвоста к голове (int)
+ * статика:   битовая карта ячеек по рядам, (width*height+63)/64 long
+ * еда:       количество, пары индекс ячейки - питательность (int)
+ * блоки:     количество; для каждого блока остановлен (byte), размер, ячейки (int)
+ * пустые:    количество, индексы ячеек в порядке {@link FreeCellIndex} (int); 0 для разреженного хранилища
+ * </pre>
+ * Вид хранилища - {@link #DENSE} или {@link #SPARSE}: еда на разреженном поле выбирается по-другому,
+ *  поэтому снимок восстанавливается только на хранилище того же вида. В снимке версии 1 вида нет, поле плотное.
+ * Числа пишутся в порядке байт {@link ByteBuffer} (по умолчанию big-endian).
+ * Содержимое других типов (не из snakeris.logic.cell) в снимок не записывается.
+ */
+public final class GameSnapshot {
+    private static final int MAGIC = 'S' << 24 | 'N' << 16 | 'K' << 8 | 'S';
+    private static final int VERSION = 2;
+    /**
+     * Виды хранилища поля
+     */
+    private static final int DENSE = 0, SPARSE = 1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private GameSnapshot() {
+    }
+
+    /**
+     * @return размер снимка игры в байтах
+     */
+    public static int size(Game game) {
+        Field field = game.getField();
+        int cells = field.getWidth() * field.getHeight();
+        long size = 4 * 7 + 8 * 3 + 4;
+        size += 2 + 4 * 4 + 4L * game.getSnake().getLength();
+        size += 8L * ((cells + 63) / 64);
+        //Обходятся только непустые ячейки: на разреженном поле пустые куски не читаются
+        int food = 0;
+        for (int i = field.nextNonEmpty(0); i >= 0; i = field.nextNonEmpty(i + 1)) {
+            if (field.getContent(i) instanceof FoodCellContent) food++;
+        }
+        size += 4 + 8L * food;
+        size += 4;
+        for (FallingBlock block : field.getFallingBlocks()) {
+            size += 1 + 4 + 4L * block.getSize();
+        }
+        FreeCellIndex free = field.getFreeCells();
+        size += 4 + (free == null ? 0 : 4L * free.size());
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Game is too big for snapshot");
+        return (int) size;
+    }
+
+    /**
+     * Записывает снимок игры в буфер начиная с его текущей позиции
+     * @param buffer буфер, в котором осталось не меньше {@link #size(Game)} байт
+     * @throws IllegalStateException если идёт такт поля
+     * @throws IllegalArgumentException если на поле есть содержимое, которое нельзя записать
+     */
+    public static void write(Game game, ByteBuffer buffer) {
+        Field field = game.getField();
+        if (field.isInTick()) throw new IllegalStateException("Snapshot in the middle of a tick");
+        int width = field.getWidth();
+        int cells = width * field.getHeight();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(field.isSparse() ? SPARSE : DENSE);
+        buffer.putInt(width).putInt(field.getHeight()).putInt(game.getInitialLength()).putInt(game.getBlocksPeriod());
+        buffer.putLong(field.getSeed()).putLong(field.getFoodRandom().getState()).putLong(game.getTick()).putInt(game.getScore());
+
+        Snake snake = game.getSnake();
+        buffer.put((byte) snake.getDir().ordinal()).put((byte) (snake.isDead() ? 1 : 0));
+        buffer.putInt(snake.getToGrow()).putInt(snake.getHeadX()).putInt(snake.getHeadY());
+        int[] body = snake.getBody();
+        buffer.putInt(body.length);
+        for (int index : body) {
+            buffer.putInt(index);
+        }
+
+        //Статические блоки и еда пишутся одним проходом по непустым ячейкам:
+        // слова битовой карты - по своему месту, еда - после карты, её количество дописывается в конце
+        int words = (cells + 63) / 64;
+        int bitmapStart = buffer.position();
+        int foodStart = bitmapStart + 8 * words;
+        int foodPosition = foodStart + 4;
+        int food = 0;
+        int word = 0;
+        long bits = 0;
+        for (int i = field.nextNonEmpty(0); i >= 0; i = field.nextNonEmpty(i + 1)) {
+            for (; word < i >>> 6; word++, bits = 0) {
+                buffer.putLong(bitmapStart + 8 * word, bits);
+            }
+            CellContent content = field.getContent(i);
+            if (content == StaticCellContent.instance) {
+                bits |= 1L << (i & 63);
+            } else if (content instanceof FoodCellContent) {
+                buffer.putInt(foodPosition, i).putInt(foodPosition + 4, ((FoodCellContent) content).nutrition);
+                foodPosition += 8;
+                food++;
+            } else if (!(content instanceof SnakeCellContent || content instanceof FallingBlockCellContent)) {
+                throw new IllegalArgumentException("Unsupported cell content " + content.getName());
+            }
+        }
+        for (; word < words; word++, bits = 0) {
+            buffer.putLong(bitmapStart + 8 * word, bits);
+        }
+        buffer.putInt(foodStart, food);
+        buffer.position(foodPosition);
+
+        List<FallingBlock> blocks = field.getFallingBlocks();
+        buffer.putInt(blocks.size());
+        for (FallingBlock block : blocks) {
+            buffer.put((byte) (block.isStopped() ? 1 : 0)).putInt(block.getSize());
+            for (int i = 0; i < block.getSize(); i++) {
+                buffer.putInt(block.getCellIndex(i));
+            }
+        }
+
+        //Разреженное хранилище не ведёт порядок пустых ячеек
+        FreeCellIndex free = field.getFreeCells();
+        if (free == null) {
+            buffer.putInt(0);
+            return;
+        }
+        buffer.putInt(free.size());
+        for (int i = 0; i < free.size(); i++) {
+            buffer.putInt(free.get(i));
+        }
+    }
+
+    /**
+     * Читает снимок с текущей позиции буфера и создаёт игру на хранилище записанного вида:
+     *  {@link ObjectGrid} для плотного поля, {@link ChunkedGrid} для разреженного
+     * @throws IOException если буфер не содержит корректный снимок
+     */
+    public static Game read(ByteBuffer buffer) throws IOException {
+        return read(buffer, null);
+    }
+
+    /**
+     * Читает снимок с текущей позиции буфера и создаёт игру
+     * @param grids создаёт хранилище ячеек по ширине и высоте поля, {@code null} - хранилище записанного вида
+     * @throws IOException если буфер не содержит корректный снимок или хранилище не того вида, что в снимке
+     */
+    public static Game read(ByteBuffer buffer, BiFunction<Integer, Integer, Grid> grids) throws IOException {
+        try {
+            return readGame(buffer, grids);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated game snapshot", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt game snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private static Game readGame(ByteBuffer buffer, BiFunction<Integer, Integer, Grid> grids) throws IOException {
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a game snapshot");
+        int version = buffer.getInt();
+        if (version != 1 && version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        int kind = version == 1 ? DENSE : buffer.getInt();
+        if (kind != DENSE && kind != SPARSE) throw new IOException("Unknown grid kind in snapshot " + kind);
+        boolean sparse = kind == SPARSE;
+        if (grids == null) grids = sparse ? ChunkedGrid::new : ObjectGrid::new;
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int initialLength = buffer.getInt();
+        int blocksPeriod = buffer.getInt();
+        long seed = buffer.getLong();
+        long randomState = buffer.getLong();
+        long tick = buffer.getLong();
+        int score = buffer.getInt();
+        if (width < 3 || height < 3 || (long) width * height > Integer.MAX_VALUE) throw new IOException("Bad field size " + width + "x" + height);
+        int cells = width * height;
+        Field field = new Field(grids.apply(width, height), seed);
+        if (field.isSparse() != sparse) {
+            throw new IOException("Snapshot was taken on a " + (sparse ? "sparse" : "dense") + " grid");
+        }
+        field.getFoodRandom().setState(randomState);
+
+        int dir = buffer.get();
+        if (dir < 0 || dir >= DIRECTIONS.length) throw new IOException("Bad snake direction " + dir);
+        boolean dead = buffer.get() != 0;
+        int toGrow = buffer.getInt();
+        int headX = buffer.getInt();
+        int headY = buffer.getInt();
+        if (headX < 0 || headX >= width || headY < 0 || headY >= height) throw new IOException("Snake head out of field");
+        int[] body = readCells(buffer, cells, field);
+        Snake snake = new Snake(field, body, headX, headY, DIRECTIONS[dir], toGrow, dead);
+
+        for (int word = 0; word < cells; word += 64) {
+            long bits = buffer.getLong();
+            for (; bits != 0; bits &= bits - 1) {
+                int index = word + Long.numberOfTrailingZeros(bits);
+                if (index >= cells) throw new IOException("Static block out of field");
+                place(field, index, StaticCellContent.instance);
+            }
+        }
+        int food = count(buffer, cells);
+        for (int i = 0; i < food; i++) {
+            int index = cellIndex(buffer, cells);
+            place(field, index, FoodCellContent.of(buffer.getInt()));
+        }
+
+        int blocks = count(buffer, cells);
+        for (int i = 0; i < blocks; i++) {
+            boolean stopped = buffer.get() != 0;
+            int[] blockCells = readCells(buffer, cells, field);
+            if (blockCells.length == 0) throw new IOException("Empty falling block");
+            FallingBlock.restore(blockCells, field, stopped);
+        }
+
+        //Порядок пустых ячеек восстанавливается, множество должно совпасть с пустыми ячейками поля.
+        // Снимок разреженного поля порядка не содержит.
+        FreeCellIndex free = field.getFreeCells();
+        int freeCount = count(buffer, cells);
+        if (free == null) {
+            if (freeCount != 0) throw new IOException("Free cells in a snapshot of a sparse field");
+            return new Game(field, snake, initialLength, tick, score, blocksPeriod);
+        }
+        if (freeCount != free.size()) throw new IOException("Free cells do not match the field");
+        free.clear();
+        for (int i = 0; i < freeCount; i++) {
+            int index = cellIndex(buffer, cells);
+            if (field.getContent(index) != EmptyCellContent.instance || free.contains(index)) {
+                throw new IOException("Free cells do not match the field");
+            }
+            free.add(index);
+        }
+        return new Game(field, snake, initialLength, tick, score, blocksPeriod);
+    }
+
+    /**
+     * Читает количество и индексы ячеек. Ячейки должны быть пустыми на поле.
+     */
+    private static int[] readCells(ByteBuffer buffer, int cells, Field field) throws IOException {
+        int[] indices = new int[count(buffer, cells)];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = cellIndex(buffer, cells);
+            if (field.getContent(indices[i]) != EmptyCellContent.instance) throw new IOException("Overlapping cells in snapshot");
+        }
+        return indices;
+    }
+
+    private static int count(ByteBuffer buffer, int cells) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > cells) throw new IOException("Bad count " + count);
+        return count;
+    }
+
+    private static int cellIndex(ByteBuffer buffer, int cells) throws IOException {
+        int index = buffer.getInt();
+        if (index < 0 || index >= cells) throw new IOException("Cell index out of field " + index);
+        return index;
+    }
+
+    private static void place(Field field, int index, CellContent content) throws IOException {
+        if (field.getContent(index) != EmptyCellContent.instance) throw new IOException("Overlapping cells in snapshot");
+        field.setContent(index % field.getWidth(), index / field.getWidth(), content);
+    }
+
+    /**
+     * Записывает снимок игры в файл через отображение файла в память. Существующий файл перезаписывается.
+     */
+    public static void save(Game game, Path path) throws IOException {
+        int size = size(game);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            write(game, buffer);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Читает снимок игры из файла, отображённого в память, и создаёт игру на хранилище записанного вида
+     * @throws IOException если файл не читается или не содержит корректный снимок
+     */
+    public static Game load(Path path) throws IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Читает снимок игры из файла, отображённого в память
+     * @param grids создаёт хранилище ячеек по ширине и высоте поля, {@code null} - хранилище записанного вида
+     * @throws IOException если файл не читается, не содержит корректный снимок или хранилище не того вида, что в снимке
+     */
+    public static Game load(Path path, BiFunction<Integer, Integer, Grid> grids) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), grids);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package snakeris.logic;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельный обход диапазона номеров в пуле такта {@link Field#setTickPool(ForkJoinPool)}.
+ * Диапазон делится пополам, пока части больше заданного размера. Части обрабатываются независимо,
+ *  поэтому тело обхода пишет только в элементы своей части.
+ */
+final class ParallelRanges {
+    /**
+     * Сколько ячеек обрабатывает одна задача пула. Этапы с меньшим объёмом работы выполняются без пула.
+     */
+    static final int CELLS_PER_TASK = 1 << 14;
+
+    private ParallelRanges() {
+    }
+
+    /**
+     * Тело обхода части from .. to-1
+     */
+    interface Body {
+        void run(int from, int to);
+    }
+
+    /**
+     * Обходит номера 0 .. count-1 в пуле и ждёт завершения всех частей
+     * @param grain наибольший размер части, которую задача обрабатывает сама
+     */
+    static void run(ForkJoinPool pool, int count, int grain, Body body) {
+        pool.invoke(new RangeTask(0, count, Math.max(1, grain), body));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private final int from, to, grain;
+        private final Body body;
+
+        RangeTask(int from, int to, int grain, Body body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, grain, body), new RangeTask(middle, to, grain, body));
+        }
+    }
+}
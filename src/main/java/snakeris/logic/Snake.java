@@ -1,13 +1,15 @@
 package snakeris.logic;
 
 import snakeris.Direction;
+import snakeris.logic.cell.CellContent;
 import snakeris.logic.cell.EmptyCellContent;
 import snakeris.logic.cell.SnakeCellContent;
 import snakeris.logic.exception.SnakeDiedException;
+import snakeris.logic.grid.IndexMap;
+import snakeris.metrics.TickMetrics.Phase;
+import snakeris.metrics.TickProbe;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 public class Snake {
     /**
@@ -15,10 +17,28 @@ public class Snake {
      */
     private final Field field;
     /**
-     * Ячейки поля, являющиеся телом змейки
-     * Первый элемент - голова
+     * Индексы ячеек поля (y*width+x), являющихся телом змейки. Кольцевой буфер, размер - степень двойки.
+     * Каждый блок тела получает порядковый номер при добавлении головы: блок с номером seq лежит в body[seq & (body.length-1)].
+     * Голова имеет номер {@link #headSeq}, хвост - headSeq - length + 1.
      */
-    private LinkedList<Cell> bodyParts = new LinkedList<>();
+    private int[] body;
+    /**
+     * Порядковый номер головы
+     */
+    private int headSeq;
+    /**
+     * Длина змейки
+     */
+    private int length;
+    /**
+     * Порядковые номера блоков тела по индексу ячейки. Позволяет за O(1) проверить, принадлежит ли ячейка змейке,
+     *  и найти место, где её откусили.
+     */
+    private final IndexMap seqs;
+    /**
+     * Содержимое всех ячеек тела. Одно на змейку, чтобы не создавать объект на каждый ход
+     */
+    private final SnakeCellContent content = new SnakeCellContent(this);
     /**
      * Направление движения змейки
      */
@@ -43,22 +63,100 @@ public class Snake {
      * @param field поле по которому двигается змейка. Не может быть null.
      */
     public Snake(int initLengh, Field field) {
+        this(field, initLengh, initLengh-1, 0, Direction.RIGHT);
+    }
+
+    /**
+     * Создаёт змейку с головой в заданной ячейке, тело вытянуто за головой против направления движения
+     *  (с переходом через границу поля). Ячейки тела должны быть пустыми.
+     * Змейка добавляется к змейкам поля {@link Field#getSnakes()} последней.
+     * @param field поле по которому двигается змейка. Не может быть null.
+     * @param initLengh начальная длина змейки. Должна быть больше 0 и меньше размера поля по направлению движения
+     * @param dir направление движения
+     * @throws IllegalArgumentException если длина не подходит или ячейки тела заняты
+     */
+    public Snake(Field field, int initLengh, int headX, int headY, Direction dir) {
         if(field==null) throw new NullPointerException("Field is null");
         if(initLengh<=0) {
             throw new IllegalArgumentException("Negative or null length of snake!");
         }
-        if(initLengh>=field.getWidth()){
-            throw new IllegalArgumentException("Snake must be shorter than field width");
+        boolean horizontal = dir == Direction.LEFT || dir == Direction.RIGHT;
+        if(initLengh>=(horizontal ? field.getWidth() : field.getHeight())){
+            throw new IllegalArgumentException("Snake must be shorter than field " + (horizontal ? "width" : "height"));
+        }
+        if(headX<0 || headX>=field.getWidth() || headY<0 || headY>=field.getHeight()){
+            throw new IllegalArgumentException("Snake head out of field: " + headX + "," + headY);
         }
         this.field = field;
-        field.setSnake(this);
+        this.dir = dir;
+        int width = field.getWidth();
+        int height = field.getHeight();
+        //Смещение от головы к хвосту
+        int dx = dir == Direction.LEFT ? 1 : dir == Direction.RIGHT ? -1 : 0;
+        int dy = dir == Direction.TOP ? 1 : dir == Direction.BOTTOM ? -1 : 0;
+        int[] cells = new int[initLengh];
         for (int i = initLengh-1; i >=0 ; i--) {
-            Cell cell = field.getCell(i, 0);
-            cell.setContent(new SnakeCellContent(this));
-            bodyParts.add(cell);
+            int back = initLengh-1-i;
+            int x = Math.floorMod(headX + dx*back, width);
+            int y = Math.floorMod(headY + dy*back, height);
+            if(field.getContent(x, y) != EmptyCellContent.instance) throw new IllegalArgumentException("Snake cell is occupied: " + x + "," + y);
+            cells[i] = y*width + x;
+        }
+        body = new int[Integer.highestOneBit(initLengh * 2 - 1) << 1];
+        seqs = new IndexMap(initLengh);
+        field.addSnake(this);
+        //Блок i-й от хвоста получает номер i, ячейки заполняются от головы к хвосту
+        for (int i = initLengh-1; i >=0 ; i--) {
+            field.setContent(cells[i] % width, cells[i] / width, content);
+            body[i] = cells[i];
+            seqs.put(cells[i], i);
+        }
+        length = initLengh;
+        headSeq = initLengh-1;
+        this.headX = headX;
+        this.headY = headY;
+    }
+
+    /**
+     * Восстанавливает змейку из снимка {@link GameSnapshot}. Ячейки тела должны быть пустыми.
+     * @param body индексы ячеек тела от хвоста к голове
+     * @param headX координаты головы, нужны и для змейки без тела
+     */
+    Snake(Field field, int[] body, int headX, int headY, Direction dir, int toGrow, boolean dead) {
+        this.field = field;
+        this.body = new int[Integer.highestOneBit(Math.max(2, body.length) * 2 - 1) << 1];
+        seqs = new IndexMap(body.length);
+        field.addSnake(this);
+        int width = field.getWidth();
+        for (int i = 0; i < body.length; i++) {
+            field.setContent(body[i] % width, body[i] / width, content);
+            this.body[i] = body[i];
+            seqs.put(body[i], i);
         }
-        headX = initLengh-1;
-        headY = 0;
+        length = body.length;
+        headSeq = body.length - 1;
+        this.headX = headX;
+        this.headY = headY;
+        this.dir = dir;
+        this.toGrow = toGrow;
+        this.dead = dead;
+    }
+
+    /**
+     * Копия змейки для копии поля {@link Field#fork()}. Ячейки поля не меняются: они уже скопированы вместе с хранилищем.
+     */
+    Snake(Snake parent, Field field) {
+        this.field = field;
+        body = parent.body.clone();
+        headSeq = parent.headSeq;
+        length = parent.length;
+        seqs = new IndexMap(parent.seqs);
+        dir = parent.dir;
+        toGrow = parent.toGrow;
+        headX = parent.headX;
+        headY = parent.headY;
+        dead = parent.dead;
+        field.addSnake(this);
     }
 
     /**
@@ -70,57 +168,149 @@ public class Snake {
      */
     public void move(){
         if(dead) throw new SnakeDiedException();
+        TickProbe probe = field.getProbe();
+        if(probe == null) {
+            step();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            step();
+        } finally {
+            probe.phase(Phase.SNAKE_MOVE, start);
+        }
+    }
+
+    /**
+     * Ход змейки, см. {@link #move()}
+     */
+    private void step(){
+        if(moveTail()) moveHead();
+    }
+
+    /**
+     * Первая часть хода: хвост. Если змейка растёт, хвост остаётся на месте, иначе последняя ячейка хвоста очищается.
+     * Если змейка укорачивается, она теряет ячейку хвоста и в этом ходу не двигается; змейка без тела умирает.
+     * @return {@code true} если голова должна сдвинуться ({@link #moveHead()})
+     */
+    boolean moveTail(){
         //Если змейка должна расти, счётчик роста уменьшается
         if(toGrow>0) {
             toGrow--;
         } else {
             //Иначе удаляется последняя ячейка хвоста (при этом её содержимое очищается)
-            bodyParts.getLast().setContent(EmptyCellContent.instance);
-            bodyParts.removeLast();
+            if (length == 0) throw new NoSuchElementException();
+            int tail = body[tailSeq() & (body.length - 1)];
+            field.setContent(tail % field.getWidth(), tail / field.getWidth(), EmptyCellContent.instance);
+            seqs.remove(tail);
+            length--;
         }
 
         //Если змейка должна укоротиться, хвост укорачивается, но змейка не двигается.
         if(toGrow<0){
             toGrow++;
             //Если тело кончилось, змея умирает.
-            if (bodyParts.isEmpty()) die();
-            return;
+            if (length == 0) die();
+            return false;
         }
+        return true;
+    }
 
+    /**
+     * Вторая часть хода: голова переходит в соседнюю ячейку по направлению движения ({@link #nextHeadIndex()})
+     *  и съедает её содержимое
+     */
+    void moveHead(){
         int width = field.getWidth();
-        int height = field.getHeight();
+        headX = nextHeadX();
+        headY = nextHeadY();
+        //Попытка съесть текущее содержимое ячейки. Поведение при поедании определяется в содержимом ячейки.
+        // Пустую ячейку есть незачем, для неё ячейка не создаётся
+        CellContent eaten = field.getContent(headX, headY);
+        if (eaten != EmptyCellContent.instance) eaten.eat(field, this, field.getCell(headX, headY));
+        //Установка ячейки в качестве головы
+        field.setContent(headX, headY, content);
+        addHead(headY * width + headX);
+    }
 
-        //Получение новых координат головы в зависимости от направления движения.
-        // Если достигается граница поля, голова появляется с противоположной стороны поля.
+    /**
+     * Индекс ячейки (y*width+x), в которую перейдёт голова при следующем ходе
+     */
+    int nextHeadIndex(){
+        return nextHeadY() * field.getWidth() + nextHeadX();
+    }
+
+    //Получение новых координат головы в зависимости от направления движения.
+    // Если достигается граница поля, голова появляется с противоположной стороны поля.
+    private int nextHeadX(){
         switch (dir) {
             case LEFT:
-                if(headX ==0) {
-                    headX = width -1;
-                }
-                else headX--;
-                break;
+                return headX == 0 ? field.getWidth() - 1 : headX - 1;
             case RIGHT:
-                if(headX ==width-1) headX = 0;
-                else headX++;
-                break;
+                return headX == field.getWidth() - 1 ? 0 : headX + 1;
+            default:
+                return headX;
+        }
+    }
+
+    private int nextHeadY(){
+        switch (dir) {
             case TOP:
-                if(headY ==0) headY = height-1;
-                else headY--;
-                break;
+                return headY == 0 ? field.getHeight() - 1 : headY - 1;
             case BOTTOM:
-                if(headY ==height-1) headY = 0;
-                else headY++;
-                break;
-        }
-        //Получение ячейки по направлению движения
-        Cell headCell = field.getCell(headX, headY);
-        //Попытка съесть текущее содержимое ячейки. Поведение при поедании определяется в содержимом ячейки
-        headCell.getContent().eat(field, this, headCell);
-        //Установка ячейки в качестве головы
-        headCell.setContent(new SnakeCellContent(this));
-        bodyParts.addFirst(headCell);
+                return headY == field.getHeight() - 1 ? 0 : headY + 1;
+            default:
+                return headY;
+        }
+    }
+
+    /**
+     * Добавляет блок тела перед головой, увеличивая буфер при необходимости
+     * @param index индекс ячейки новой головы
+     */
+    private void addHead(int index) {
+        if (length == body.length) {
+            int[] copy = new int[body.length * 2];
+            int tailSeq = tailSeq();
+            int[] linear = new int[length];
+            copyOut(tailSeq, length, linear);
+            body = copy;
+            copyIn(tailSeq, linear);
+        }
+        headSeq++;
+        body[headSeq & (body.length - 1)] = index;
+        seqs.put(index, headSeq);
+        length++;
     }
 
+    /**
+     * Порядковый номер последнего блока хвоста
+     */
+    private int tailSeq() {
+        return headSeq - length + 1;
+    }
+
+    /**
+     * Копирует подряд идущие блоки тела начиная с номера fromSeq в массив (не больше двух копирований)
+     */
+    private void copyOut(int fromSeq, int count, int[] dest) {
+        int start = fromSeq & (body.length - 1);
+        int first = Math.min(count, body.length - start);
+        System.arraycopy(body, start, dest, 0, first);
+        System.arraycopy(body, 0, dest, first, count - first);
+    }
+
+    /**
+     * Записывает блоки из массива в буфер на места с номерами начиная с fromSeq
+     */
+    private void copyIn(int fromSeq, int[] src) {
+        int start = fromSeq & (body.length - 1);
+        int first = Math.min(src.length, body.length - start);
+        System.arraycopy(src, 0, body, start, first);
+        System.arraycopy(src, first, body, 0, src.length - first);
+    }
+
+
     /**
      * Меняет направление движения. Новое направление не должно быть противоположным текущему ({@link Direction#isOpposite(Direction)}).
      * @param dir новое направление.
@@ -163,6 +353,40 @@ public class Snake {
         return headY;
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return индекс ячейки последнего блока хвоста (y*width+x) или -1, если тела нет
+     */
+    public int getTailIndex() {
+        return length == 0 ? -1 : body[tailSeq() & (body.length - 1)];
+    }
+
+    /**
+     * @return индексы ячеек тела (y*width+x) от хвоста к голове
+     */
+    int[] getBody() {
+        int[] cells = new int[length];
+        copyOut(tailSeq(), length, cells);
+        return cells;
+    }
+
+    /**
+     * Сколько ещё ходов змейка растёт (больше 0) или укорачивается (меньше 0)
+     */
+    int getToGrow() {
+        return toGrow;
+    }
+
+    /**
+     * Содержимое ячеек тела
+     */
+    SnakeCellContent getContent() {
+        return content;
+    }
+
     /**
      * Вызывается, когда змейка съела кусок своего хвоста.
      * @param eaten Клетка которая съедена.
@@ -185,24 +409,39 @@ public class Snake {
         return dead;
     }
 
+    /**
+     * Тело погибшей змейки освобождает поле: ячейки тела превращаются в падающие блоки ({@link FallingBlock}).
+     * После этого у змейки нет тела. Используется на арене {@link Arena}, где игра продолжается без погибшей змейки.
+     */
+    void dropBody(){
+        if(length == 0) return;
+        int[] cells = getBody();
+        for (int i : cells) {
+            seqs.remove(i);
+        }
+        length = 0;
+        new FallingBlock(cells, field);
+    }
+
     /**
      * Убирает блок от змейки. Если после этого блока были ещё блоки в хвосте, хвост превращается в падающий блок
      * @param cell Ячейка, которую нужно удалить
      */
     public void removeBodyBlock(Cell cell) {
-        if(!bodyParts.contains(cell)) throw new IllegalArgumentException("Cell is not part of snake");
-        // Список блоков, отделённых от змеи
-        List<Cell> separated = new ArrayList<>(bodyParts.size()/2);
-        Cell removed;
-        //Удаление последнего блока из тела змеи и добавление этого блока в separeted, пока не дойдём до удалённого блока cell
-        do{
-            removed = bodyParts.removeLast();
-            if(!removed.equals(cell)) {
-                separated.add(removed);
-            }
-        }while (!removed.equals(cell));
+        int index = cell.getY() * field.getWidth() + cell.getX();
+        if(!seqs.containsKey(index)) throw new IllegalArgumentException("Cell is not part of snake");
+        int seq = seqs.get(index, 0);
+        int tailSeq = tailSeq();
+        //Блоки от хвоста до удалённого блока cell (не включая его) отделяются от змеи одним копированием
+        int[] separated = new int[seq - tailSeq];
+        copyOut(tailSeq, separated.length, separated);
+        for (int i : separated) {
+            seqs.remove(i);
+        }
+        seqs.remove(index);
+        length -= separated.length + 1;
         //Если что-то отделено, оно превращается в падающий блок
-        if(!separated.isEmpty()) {
+        if(separated.length > 0) {
             new FallingBlock(separated, field);
         }
     }
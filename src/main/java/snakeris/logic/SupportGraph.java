@@ -0,0 +1,286 @@
+package snakeris.logic;
+
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.FallingBlockCellContent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Граф опоры падающих блоков: какой блок лежит на каком, какие блоки лежат на дне или статических блоках
+ *  и какие опираются на то, что их останавливает (змейку).
+ * Строится одним проходом по ячейкам блоков. Номер блока в графе - его позиция в списке блоков поля ({@link FallingBlock#graphId}).
+ * Буферы переиспользуются между тактами.
+ */
+class SupportGraph {
+    private final Field field;
+    /**
+     * Блоки графа, первые {@link #size} элементов
+     */
+    private FallingBlock[] blocks = new FallingBlock[16];
+    private int size;
+    /**
+     * Блок лежит на дне поля или на статическом блоке и должен трансформироваться
+     */
+    private boolean[] grounded = new boolean[16];
+    /**
+     * Под блоком есть содержимое, останавливающее падение (змейка)
+     */
+    private boolean[] held = new boolean[16];
+    /**
+     * Рёбра "нижний блок - лежащий на нём блок" в порядке нахождения
+     */
+    private final Edges edges = new Edges();
+    /**
+     * Рёбра частей при параллельном построении, по части на элемент. Переиспользуются.
+     */
+    private Edges[] partEdges = new Edges[0];
+    /**
+     * Первый блок каждой части при параллельном построении, последний элемент - конец последней части
+     */
+    private int[] partStart = new int[1];
+    /**
+     * Лежащие на блоке i блоки: upper[start[i]] .. upper[start[i+1]-1]
+     */
+    private int[] start = new int[17];
+    private int[] upper = new int[64];
+    /**
+     * Трансформированные блоки
+     */
+    private boolean[] transformed = new boolean[16];
+    /**
+     * Блоки, которые трансформируются в текущем или следующем проходе
+     */
+    private final BitSet ready = new BitSet();
+    /**
+     * Очередь обхода при остановке блоков
+     */
+    private int[] queue = new int[16];
+
+    SupportGraph(Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Строит граф по текущему положению блоков
+     * @param list блоки поля в порядке их обработки
+     */
+    void build(List<FallingBlock> list) {
+        build(list, null);
+    }
+
+    /**
+     * Строит граф по текущему положению блоков. Если передан пул и ячеек блоков много,
+     *  список блоков делится на части, которые просматриваются параллельно: просмотр только читает поле,
+     *  каждая часть пишет флаги своих блоков и свои рёбра, рёбра частей затем объединяются в порядке частей.
+     * Поэтому граф совпадает с построенным последовательно, в том числе порядок рёбер.
+     * @param list блоки поля в порядке их обработки
+     * @param pool пул такта или {@code null}
+     */
+    void build(List<FallingBlock> list, ForkJoinPool pool) {
+        size = list.size();
+        if (blocks.length < size) {
+            int capacity = Math.max(size, blocks.length * 2);
+            blocks = new FallingBlock[capacity];
+            grounded = new boolean[capacity];
+            held = new boolean[capacity];
+            transformed = new boolean[capacity];
+            queue = new int[capacity];
+            start = new int[capacity + 1];
+        } else {
+            Arrays.fill(blocks, size, blocks.length, null);
+        }
+        int id = 0;
+        int cells = 0;
+        for (FallingBlock block : list) {
+            blocks[id] = block;
+            block.graphId = id++;
+            cells += block.getSize();
+        }
+        edges.clear();
+        if (pool == null || cells < 2 * ParallelRanges.CELLS_PER_TASK) {
+            scan(0, size, edges);
+        } else {
+            scanParallel(pool);
+        }
+        int edgeCount = edges.count;
+        int[] edgeLower = edges.lower, edgeUpper = edges.upper;
+        //Группировка рёбер по нижнему блоку подсчётом
+        Arrays.fill(start, 0, size + 1, 0);
+        for (int e = 0; e < edgeCount; e++) {
+            start[edgeLower[e] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            start[i + 1] += start[i];
+        }
+        if (upper.length < edgeCount) upper = new int[edgeUpper.length];
+        for (int e = 0; e < edgeCount; e++) {
+            //start[lower] временно служит позицией записи, после цикла сдвигается на начало следующего блока
+            upper[start[edgeLower[e]]++] = edgeUpper[e];
+        }
+        for (int i = size; i > 0; i--) {
+            start[i] = start[i - 1];
+        }
+        start[0] = 0;
+    }
+
+    /**
+     * Трансформирует блоки так же, как последовательные проходы по списку блоков:
+     *  в проходе блок трансформируется, если лежит на дне, статическом блоке или блоке, трансформированном раньше.
+     * Трансформированный блок делает готовыми лежащие на нём блоки: стоящие дальше в списке - в этом же проходе, раньше - в следующем.
+     * Ячейки блоков при этом не перепроверяются.
+     * @param afterPass вызывается после каждого прохода, в котором что-то трансформировалось.
+     *                  Возвращает {@code true}, если положение блоков изменилось (удалены ряды) и граф устарел
+     * @return {@code true} если трансформация прервана, потому что граф устарел
+     */
+    boolean transform(BooleanSupplier afterPass) {
+        ready.clear();
+        for (int i = 0; i < size; i++) {
+            if (grounded[i]) ready.set(i);
+        }
+        while (!ready.isEmpty()) {
+            for (int i = ready.nextSetBit(0); i >= 0; i = ready.nextSetBit(i + 1)) {
+                ready.clear(i);
+                if (transformed[i]) continue;
+                transformed[i] = true;
+                blocks[i].transform();
+                for (int k = start[i]; k < start[i + 1]; k++) {
+                    if (!transformed[upper[k]]) ready.set(upper[k]);
+                }
+            }
+            if (afterPass.getAsBoolean()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Трансформирован ли блок при последнем вызове {@link #transform(BooleanSupplier)}
+     */
+    boolean isTransformed(FallingBlock block) {
+        int id = block.graphId;
+        return id < size && blocks[id] == block && transformed[id];
+    }
+
+    /**
+     * Останавливает не трансформированные блоки, лежащие на змейке, и все блоки, лежащие на остановленных
+     */
+    void stop() {
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            if (held[i] && !transformed[i] && !blocks[i].isStopped()) {
+                blocks[i].stop();
+                queue[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            for (int k = start[i]; k < start[i + 1]; k++) {
+                FallingBlock block = blocks[upper[k]];
+                if (transformed[upper[k]] || block.isStopped()) continue;
+                block.stop();
+                queue[tail++] = upper[k];
+            }
+        }
+    }
+
+    /**
+     * Просматривает ячейки блоков from .. to-1: под какими блоками дно, статический блок, змейка или другой блок
+     * @param out рёбра в порядке блоков и их ячеек
+     */
+    private void scan(int from, int to, Edges out) {
+        int width = field.getWidth();
+        int bottom = (field.getHeight() - 1) * width;
+        for (int i = from; i < to; i++) {
+            FallingBlock block = blocks[i];
+            boolean isGrounded = false, isHeld = false;
+            for (int c = 0; c < block.getSize() && !isGrounded; c++) {
+                int index = block.getCellIndex(c);
+                if (index >= bottom) {
+                    isGrounded = true;
+                    break;
+                }
+                CellContent lower = field.getContent(index + width);
+                if (lower.transformsBlock()) {
+                    isGrounded = true;
+                } else if (lower instanceof FallingBlockCellContent) {
+                    FallingBlock below = ((FallingBlockCellContent) lower).getBlock();
+                    if (below != block) out.add(below.graphId, i);
+                } else if (lower.stopsFallingBlock()) {
+                    isHeld = true;
+                }
+            }
+            grounded[i] = isGrounded;
+            held[i] = isHeld;
+            transformed[i] = false;
+        }
+    }
+
+    /**
+     * Делит блоки на части примерно по {@link ParallelRanges#CELLS_PER_TASK} ячеек, просматривает части в пуле
+     *  и собирает их рёбра в {@link #edges} в порядке частей
+     */
+    private void scanParallel(ForkJoinPool pool) {
+        int parts = 0;
+        int cells = 0;
+        partStart[0] = 0;
+        for (int i = 0; i < size; i++) {
+            cells += blocks[i].getSize();
+            if (cells >= ParallelRanges.CELLS_PER_TASK || i == size - 1) {
+                if (parts + 1 == partStart.length) partStart = Arrays.copyOf(partStart, partStart.length * 2);
+                partStart[++parts] = i + 1;
+                cells = 0;
+            }
+        }
+        if (partEdges.length < parts) {
+            Edges[] grown = Arrays.copyOf(partEdges, Math.max(parts, partEdges.length * 2));
+            for (int p = partEdges.length; p < grown.length; p++) {
+                grown[p] = new Edges();
+            }
+            partEdges = grown;
+        }
+        ParallelRanges.run(pool, parts, 1, (from, to) -> {
+            for (int p = from; p < to; p++) {
+                partEdges[p].clear();
+                scan(partStart[p], partStart[p + 1], partEdges[p]);
+            }
+        });
+        for (int p = 0; p < parts; p++) {
+            edges.addAll(partEdges[p]);
+        }
+    }
+
+    /**
+     * Список рёбер "нижний блок - лежащий на нём блок"
+     */
+    private static class Edges {
+        int[] lower = new int[64], upper = new int[64];
+        int count;
+
+        void add(int low, int up) {
+            if (count == lower.length) {
+                lower = Arrays.copyOf(lower, count * 2);
+                upper = Arrays.copyOf(upper, count * 2);
+            }
+            lower[count] = low;
+            upper[count++] = up;
+        }
+
+        void addAll(Edges other) {
+            if (count + other.count > lower.length) {
+                int capacity = Math.max(count + other.count, lower.length * 2);
+                lower = Arrays.copyOf(lower, capacity);
+                upper = Arrays.copyOf(upper, capacity);
+            }
+            System.arraycopy(other.lower, 0, lower, count, other.count);
+            System.arraycopy(other.upper, 0, upper, count, other.count);
+            count += other.count;
+        }
+
+        void clear() {
+            count = 0;
+        }
+    }
+}
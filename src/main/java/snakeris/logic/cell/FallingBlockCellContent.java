@@ -12,11 +12,6 @@ public class FallingBlockCellContent implements CellContent {
     public static final String NAME = "Falling";
     private final FallingBlock block;
 
-    /**
-     * Показывает, приостановлено ли падение блока.
-     */
-    private boolean stopped = false;
-
     /**
      * @param block Падающий блок, к которому относится клетка
      */
@@ -56,7 +51,7 @@ public class FallingBlockCellContent implements CellContent {
      */
     @Override
     public boolean stopsFallingBlock() {
-        return stopped;
+        return block.isStopped();
     }
 
     /**
@@ -70,11 +65,23 @@ public class FallingBlockCellContent implements CellContent {
         field.removeFallingBlock(block);
     }
 
+    /**
+     * Показывает, приостановлено ли падение блока. Флаг хранится в блоке {@link FallingBlock#isStopped()}.
+     */
     public boolean isStopped() {
-        return stopped;
+        return block.isStopped();
     }
 
-    public void setStopped(boolean stopped) {
-        this.stopped = stopped;
+    /**
+     * Содержимое ячеек одного блока неотличимо
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FallingBlockCellContent && ((FallingBlockCellContent) o).block == block;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(block);
     }
 }
@@ -15,6 +15,25 @@ public class FoodCellContent implements CellContent {
      * Может быть положительной (змея растёт) или отрицательной (змея укорачивается), но не может быть 0 (это не имеет смысла)
      */
     public final int nutrition;
+    /**
+     * Наибольшая по модулю питательность, еда с которой кешируется в {@link #of(int)}
+     */
+    private static final int CACHED = 32;
+    private static final FoodCellContent[] cache = new FoodCellContent[CACHED * 2 + 1];
+    static {
+        for (int n = -CACHED; n <= CACHED; n++) {
+            if (n != 0) cache[n + CACHED] = new FoodCellContent(n);
+        }
+    }
+
+    /**
+     * Еда с заданной питательностью. Содержимое не изменяемое, поэтому для небольших значений возвращается общий экземпляр.
+     * @throws IllegalArgumentException если питательность 0
+     */
+    public static FoodCellContent of(int nutrition) {
+        if (nutrition >= -CACHED && nutrition <= CACHED && nutrition != 0) return cache[nutrition + CACHED];
+        return new FoodCellContent(nutrition);
+    }
 
     public FoodCellContent() {
         this(1);
@@ -61,4 +80,17 @@ public class FoodCellContent implements CellContent {
     public void onStaticFall(Cell cell, Field field) {
         field.randomizeFood(nutrition);
     }
+
+    /**
+     * Еда с одинаковой питательностью неотличима
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FoodCellContent && ((FoodCellContent) o).nutrition == nutrition;
+    }
+
+    @Override
+    public int hashCode() {
+        return nutrition;
+    }
 }
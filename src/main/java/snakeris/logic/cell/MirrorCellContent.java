@@ -0,0 +1,45 @@
+package snakeris.logic.cell;
+
+import snakeris.logic.Cell;
+import snakeris.logic.Field;
+import snakeris.logic.Snake;
+
+/**
+ * Содержимое ячейки поля-зеркала, которое только повторяет чужое поле (например, у зрителя игры).
+ * Имеет имя типа исходного содержимого, поэтому отображается так же, но не связано со змейкой или падающим блоком
+ *  и не участвует в логике игры. Для каждого типа один экземпляр.
+ */
+public class MirrorCellContent implements CellContent {
+    public static final MirrorCellContent SNAKE = new MirrorCellContent(SnakeCellContent.NAME);
+    public static final MirrorCellContent FALLING = new MirrorCellContent(FallingBlockCellContent.NAME);
+
+    private final String name;
+
+    private MirrorCellContent(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void eat(Field field, Snake snake, Cell thisCell) {
+    }
+
+    @Override
+    public boolean transformsBlock() {
+        return false;
+    }
+
+    @Override
+    public boolean stopsFallingBlock() {
+        return false;
+    }
+
+    @Override
+    public void onStaticFall(Cell cell, Field field) {
+
+    }
+}
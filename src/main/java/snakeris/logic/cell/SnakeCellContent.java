@@ -29,14 +29,16 @@ public class SnakeCellContent implements CellContent {
     }
 
     /**
-     * ри поедании хвоста у змеи вызывается соответствующий метод
+     * ри поедании хвоста у змеи вызывается соответствующий метод.
+     * Змея, врезавшаяся в тело другой змеи, умирает.
      * @param field ссылка на поле
      * @param snake змея
      * @param thisCell ячейка, к которой относится это содержимое
      */
     @Override
     public void eat(Field field, Snake snake, Cell thisCell) {
-        snake.eatenTail(thisCell);
+        if (snake == this.snake) snake.eatenTail(thisCell);
+        else snake.die();
     }
 
     @Override
@@ -58,4 +60,17 @@ public class SnakeCellContent implements CellContent {
     public void onStaticFall(Cell cell, Field field) {
         snake.removeBodyBlock(cell);
     }
+
+    /**
+     * Содержимое ячеек одной змеи неотличимо
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof SnakeCellContent && ((SnakeCellContent) o).snake == snake;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(snake);
+    }
 }
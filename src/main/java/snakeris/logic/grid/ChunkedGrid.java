@@ -0,0 +1,272 @@
+package snakeris.logic.grid;
+
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.EmptyCellContent;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Разреженное хранилище для очень больших полей: поле разбито на квадратные куски {@link #TILE}x{@link #TILE} ячеек.
+ * Кусок создаётся при записи первого непустого содержимого и удаляется, когда в нём не остаётся непустых ячеек,
+ *  поэтому пустой кусок занимает только ссылку в таблице кусков. Чтение ячейки пустого куска ничего не создаёт.
+ * <p>
+ * Для каждой полосы кусков (ряд кусков по высоте) хранится количество кусков и непустых ячеек,
+ *  поиск пустых ячеек {@link #findEmpty(int, int)} пропускает полосы и куски без содержимого целиком.
+ * Копия {@link #fork()} разделяет куски с хранилищем, кусок копируется при первой записи в него.
+ */
+public class ChunkedGrid implements SparseGrid {
+    private static final int SHIFT = 5;
+    /**
+     * Сторона куска в ячейках
+     */
+    public static final int TILE = 1 << SHIFT;
+    private static final int MASK = TILE - 1;
+
+    private final int width;
+    private final int height;
+    /**
+     * Количество кусков по ширине
+     */
+    private final int tilesX;
+    /**
+     * Куски по рядам кусков, null - в куске нет непустых ячеек
+     */
+    private final Tile[] tiles;
+    /**
+     * Принадлежит ли кусок только этому хранилищу. Общий кусок копируется перед записью.
+     */
+    private final boolean[] owned;
+    /**
+     * Количество созданных кусков в каждой полосе
+     */
+    private final int[] bandTiles;
+    /**
+     * Количество непустых ячеек в каждой полосе
+     */
+    private final int[] bandOccupied;
+
+    /**
+     * Кусок поля: содержимое ячеек по рядам куска, null - пустая ячейка
+     */
+    private static final class Tile {
+        final CellContent[] cells;
+        int count;
+
+        Tile() {
+            cells = new CellContent[TILE * TILE];
+        }
+
+        Tile(Tile other) {
+            cells = other.cells.clone();
+            count = other.count;
+        }
+    }
+
+    public ChunkedGrid(int width, int height) {
+        if ((long) width * height > Integer.MAX_VALUE) throw new IllegalArgumentException("Grid is too big: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        tilesX = (width + MASK) >>> SHIFT;
+        int tilesY = (height + MASK) >>> SHIFT;
+        tiles = new Tile[tilesX * tilesY];
+        owned = new boolean[tiles.length];
+        bandTiles = new int[tilesY];
+        bandOccupied = new int[tilesY];
+    }
+
+    private ChunkedGrid(ChunkedGrid parent) {
+        width = parent.width;
+        height = parent.height;
+        tilesX = parent.tilesX;
+        tiles = parent.tiles.clone();
+        owned = new boolean[tiles.length];
+        bandTiles = parent.bandTiles.clone();
+        bandOccupied = parent.bandOccupied.clone();
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Количество созданных кусков
+     */
+    public int getTileCount() {
+        int count = 0;
+        for (int n : bandTiles) {
+            count += n;
+        }
+        return count;
+    }
+
+    @Override
+    public CellContent get(int index) {
+        int y = index / width;
+        int x = index - y * width;
+        Tile tile = tiles[(y >>> SHIFT) * tilesX + (x >>> SHIFT)];
+        if (tile == null) return EmptyCellContent.instance;
+        CellContent content = tile.cells[(y & MASK) << SHIFT | (x & MASK)];
+        return content == null ? EmptyCellContent.instance : content;
+    }
+
+    @Override
+    public CellContent set(int index, CellContent content) {
+        int y = index / width;
+        int x = index - y * width;
+        int band = y >>> SHIFT;
+        int t = band * tilesX + (x >>> SHIFT);
+        int local = (y & MASK) << SHIFT | (x & MASK);
+        Tile tile = tiles[t];
+        CellContent old = tile == null ? null : tile.cells[local];
+        boolean empty = content == EmptyCellContent.instance;
+        if (empty ? old == null : old == content) return old == null ? EmptyCellContent.instance : old;
+        if (tile == null) {
+            tile = tiles[t] = new Tile();
+            owned[t] = true;
+            bandTiles[band]++;
+        } else if (!owned[t]) {
+            tile = tiles[t] = new Tile(tile);
+            owned[t] = true;
+        }
+        if (empty) {
+            tile.cells[local] = null;
+            bandOccupied[band]--;
+            //Кусок без содержимого освобождается
+            if (--tile.count == 0) {
+                tiles[t] = null;
+                owned[t] = false;
+                bandTiles[band]--;
+            }
+        } else {
+            tile.cells[local] = content;
+            if (old == null) {
+                tile.count++;
+                bandOccupied[band]++;
+            }
+        }
+        return old == null ? EmptyCellContent.instance : old;
+    }
+
+    @Override
+    public int countEmpty(int rows) {
+        rows = Math.min(rows, height);
+        int empty = 0;
+        for (int band = 0; band << SHIFT < rows; band++) {
+            int y0 = band << SHIFT;
+            int covered = Math.min(TILE, rows - y0);
+            empty += covered * width;
+            if (covered == Math.min(TILE, height - y0)) {
+                empty -= bandOccupied[band];
+            } else if (bandTiles[band] > 0) {
+                //Полоса пересекает границу рядов: непустые ячейки считаются только в верхних рядах кусков
+                for (int tx = 0; tx < tilesX; tx++) {
+                    Tile tile = tiles[band * tilesX + tx];
+                    if (tile == null) continue;
+                    for (int i = 0; i < covered << SHIFT; i++) {
+                        if (tile.cells[i] != null) empty--;
+                    }
+                }
+            }
+        }
+        return empty;
+    }
+
+    @Override
+    public int findEmpty(int n, int rows) {
+        rows = Math.min(rows, height);
+        if (n < 0) return -1;
+        for (int band = 0; band << SHIFT < rows; band++) {
+            int y0 = band << SHIFT;
+            int y1 = Math.min(y0 + TILE, rows);
+            if (bandTiles[band] == 0) {
+                //Полоса без кусков пуста целиком
+                int free = (y1 - y0) * width;
+                if (n < free) return y0 * width + n;
+                n -= free;
+                continue;
+            }
+            for (int y = y0; y < y1; y++) {
+                for (int tx = 0; tx < tilesX; tx++) {
+                    int x0 = tx << SHIFT;
+                    int segment = Math.min(TILE, width - x0);
+                    Tile tile = tiles[band * tilesX + tx];
+                    if (tile == null) {
+                        if (n < segment) return y * width + x0 + n;
+                        n -= segment;
+                        continue;
+                    }
+                    int local = (y & MASK) << SHIFT;
+                    for (int i = 0; i < segment; i++) {
+                        if (tile.cells[local + i] == null && n-- == 0) return y * width + x0 + i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int nextOccupied(int from) {
+        if (from < 0) from = 0;
+        int y = from / width;
+        int x = from - y * width;
+        while (y < height) {
+            int band = y >>> SHIFT;
+            if (bandTiles[band] == 0) {
+                //Полоса без кусков пропускается целиком
+                y = (band + 1) << SHIFT;
+                x = 0;
+                continue;
+            }
+            int local = (y & MASK) << SHIFT;
+            while (x < width) {
+                int tx = x >>> SHIFT;
+                int x1 = Math.min((tx + 1) << SHIFT, width);
+                Tile tile = tiles[band * tilesX + tx];
+                if (tile != null) {
+                    for (; x < x1; x++) {
+                        if (tile.cells[local | (x & MASK)] != null) return y * width + x;
+                    }
+                }
+                x = x1;
+            }
+            y++;
+            x = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Копия разделяет с хранилищем куски, таблица кусков копируется
+     */
+    @Override
+    public ChunkedGrid fork() {
+        Arrays.fill(owned, false);
+        return new ChunkedGrid(this);
+    }
+
+    @Override
+    public void rebind(Map<CellContent, CellContent> replacements) {
+        if (replacements.isEmpty()) return;
+        for (int t = 0; t < tiles.length; t++) {
+            Tile tile = tiles[t];
+            if (tile == null) continue;
+            for (int i = 0; i < tile.cells.length; i++) {
+                CellContent replacement = tile.cells[i] == null ? null : replacements.get(tile.cells[i]);
+                if (replacement == null) continue;
+                if (!owned[t]) {
+                    tile = tiles[t] = new Tile(tile);
+                    owned[t] = true;
+                }
+                tile.cells[i] = replacement;
+            }
+        }
+    }
+}
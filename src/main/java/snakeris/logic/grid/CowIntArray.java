@@ -0,0 +1,75 @@
+package snakeris.logic.grid;
+
+import java.util.Arrays;
+
+/**
+ * Массив int фиксированной длины, разбитый на куски по {@link #CHUNK} элементов (последний - по остатку), с копированием при записи.
+ * {@link #fork()} создаёт копию за время, пропорциональное количеству кусков: куски становятся общими для обеих копий,
+ *  и каждая копия копирует кусок при первой записи в него. Чтение общих кусков ничего не копирует.
+ */
+public class CowIntArray {
+    private static final int SHIFT = 8;
+    /**
+     * Размер куска
+     */
+    public static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final int length;
+    private final int[][] chunks;
+    /**
+     * Принадлежит ли кусок только этой копии. Общий кусок копируется перед записью.
+     */
+    private final boolean[] owned;
+
+    /**
+     * @param length длина массива
+     * @param fill начальное значение элементов
+     */
+    public CowIntArray(int length, int fill) {
+        this.length = length;
+        int count = (length + MASK) >>> SHIFT;
+        chunks = new int[count][];
+        owned = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            //Последний кусок не длиннее остатка массива
+            chunks[i] = new int[Math.min(CHUNK, length - (i << SHIFT))];
+            if (fill != 0) Arrays.fill(chunks[i], fill);
+            owned[i] = true;
+        }
+    }
+
+    private CowIntArray(CowIntArray parent) {
+        length = parent.length;
+        chunks = parent.chunks.clone();
+        owned = new boolean[chunks.length];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int get(int i) {
+        return chunks[i >>> SHIFT][i & MASK];
+    }
+
+    public void set(int i, int value) {
+        int c = i >>> SHIFT;
+        int[] chunk = chunks[c];
+        if (!owned[c]) {
+            //Запись того же значения не требует копии куска
+            if (chunk[i & MASK] == value) return;
+            chunk = chunks[c] = chunk.clone();
+            owned[c] = true;
+        }
+        chunk[i & MASK] = value;
+    }
+
+    /**
+     * Копия массива, разделяющая с ним все куски. После вызова куски общие и для этого массива.
+     */
+    public CowIntArray fork() {
+        Arrays.fill(owned, false);
+        return new CowIntArray(this);
+    }
+}
@@ -0,0 +1,86 @@
+package snakeris.logic.grid;
+
+/**
+ * Множество индексов пустых ячеек поля с добавлением, удалением и выбором по номеру за O(1).
+ * Индексы хранятся плотным массивом, для каждой ячейки запоминается её позиция в этом массиве,
+ * поэтому удаление переносит на место удалённого последний элемент.
+ * Массивы копируются при записи ({@link CowIntArray}), поэтому копия множества {@link #fork()} дешёвая.
+ */
+public class FreeCellIndex {
+    /**
+     * Индексы пустых ячеек, первые {@link #size} элементов
+     */
+    private final CowIntArray cells;
+    /**
+     * Позиция ячейки в массиве {@link #cells} или -1, если ячейки нет в множестве
+     */
+    private final CowIntArray positions;
+    private int size;
+
+    /**
+     * Создаёт множество, содержащее все ячейки поля из cellCount ячеек
+     */
+    public FreeCellIndex(int cellCount) {
+        cells = new CowIntArray(cellCount, 0);
+        positions = new CowIntArray(cellCount, 0);
+        for (int i = 0; i < cellCount; i++) {
+            cells.set(i, i);
+            positions.set(i, i);
+        }
+        size = cellCount;
+    }
+
+    private FreeCellIndex(FreeCellIndex parent) {
+        cells = parent.cells.fork();
+        positions = parent.positions.fork();
+        size = parent.size;
+    }
+
+    public void add(int index) {
+        if (positions.get(index) >= 0) return;
+        cells.set(size, index);
+        positions.set(index, size++);
+    }
+
+    public void remove(int index) {
+        int pos = positions.get(index);
+        if (pos < 0) return;
+        int last = cells.get(--size);
+        cells.set(pos, last);
+        positions.set(last, pos);
+        positions.set(index, -1);
+    }
+
+    public boolean contains(int index) {
+        return positions.get(index) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i номер от 0 до {@link #size()}
+     * @return индекс ячейки с этим номером. Номера меняются при удалении.
+     */
+    public int get(int i) {
+        return cells.get(i);
+    }
+
+    /**
+     * Удаляет все ячейки из множества
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions.set(cells.get(i), -1);
+        }
+        size = 0;
+    }
+
+    /**
+     * Независимая копия множества с тем же порядком ячеек. Массивы общие, пока одна из копий их не изменит.
+     */
+    public FreeCellIndex fork() {
+        return new FreeCellIndex(this);
+    }
+}
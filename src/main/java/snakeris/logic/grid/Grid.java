@@ -0,0 +1,44 @@
+package snakeris.logic.grid;
+
+import snakeris.logic.cell.CellContent;
+
+import java.util.Map;
+
+/**
+ * Хранилище содержимого ячеек поля.
+ * Ячейки адресуются индексом {@code y*width + x}, то есть хранятся по рядам.
+ * Поле {@link snakeris.logic.Field} работает с ячейками только через этот интерфейс,
+ * а {@link snakeris.logic.Cell} является лишь представлением ячейки хранилища.
+ */
+public interface Grid {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @param index индекс ячейки {@code y*width + x}
+     * @return содержимое ячейки
+     */
+    CellContent get(int index);
+
+    /**
+     * Устанавливает содержимое ячейки
+     * @param index индекс ячейки {@code y*width + x}
+     * @param content новое содержимое
+     * @return предыдущее содержимое ячейки
+     */
+    CellContent set(int index, CellContent content);
+
+    /**
+     * Независимая копия хранилища для {@link snakeris.logic.Field#fork()}.
+     * Содержимое змеи и падающих блоков в копии остаётся тем же, что в исходном хранилище, пока его не заменит {@link #rebind(Map)}.
+     */
+    Grid fork();
+
+    /**
+     * Заменяет содержимое ячеек по таблице замен: ячейки с содержимым-ключом получают содержимое-значение.
+     * Используется копией поля, чтобы ячейки ссылались на её змейку и блоки.
+     * @param replacements таблица замен, сравнение по ссылке
+     */
+    void rebind(Map<CellContent, CellContent> replacements);
+}
@@ -0,0 +1,123 @@
+package snakeris.logic.grid;
+
+import java.util.Arrays;
+
+/**
+ * Отображение индексов ячеек поля (неотрицательных) в числа без упаковки в объекты.
+ * Открытая адресация с линейным пробированием: при удалении следующие элементы цепочки сдвигаются назад,
+ * поэтому таблица не копит удалённые метки. Памяти занимает пропорционально числу элементов, а не размеру поля.
+ */
+public class IndexMap {
+    /**
+     * Ключ свободного слота
+     */
+    private static final int FREE = -1;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public IndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Копия отображения
+     */
+    public IndexMap(IndexMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        size = other.size;
+    }
+
+    /**
+     * @param index индекс ячейки, не меньше 0
+     * @throws IllegalArgumentException если индекс отрицательный
+     */
+    public void put(int index, int value) {
+        if (index < 0) throw new IllegalArgumentException("Negative cell index " + index);
+        int slot = find(index);
+        if (keys[slot] == FREE) {
+            keys[slot] = index;
+            size++;
+        }
+        values[slot] = value;
+        if (size * 2 > keys.length) resize();
+    }
+
+    public boolean containsKey(int index) {
+        return index >= 0 && keys[find(index)] != FREE;
+    }
+
+    /**
+     * @return значение для индекса или missing, если индекса нет
+     */
+    public int get(int index, int missing) {
+        if (index < 0) return missing;
+        int slot = find(index);
+        return keys[slot] == FREE ? missing : values[slot];
+    }
+
+    public void remove(int index) {
+        if (index < 0) return;
+        int slot = find(index);
+        if (keys[slot] == FREE) return;
+        size--;
+        //Сдвиг назад элементов, которые при вставке прошли через освобождённый слот
+        int free = slot;
+        for (int i = (free + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int home = hash(keys[i]);
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = FREE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    /**
+     * Слот с заданным ключом или свободный слот, в который его следует вставить
+     */
+    private int find(int index) {
+        int slot = hash(index);
+        while (keys[slot] != FREE && keys[slot] != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(int index) {
+        int h = index * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package snakeris.logic.grid;
+
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.cell.EmptyCellContent;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Хранилище, содержащее ссылки на объекты содержимого ячеек.
+ * Хранит любое содержимое как есть, используется по умолчанию.
+ * Копия {@link #fork()} копирует весь массив, для частых копий подходит {@link PackedGrid}.
+ */
+public class ObjectGrid implements Grid {
+    private final int width;
+    private final int height;
+    /**
+     * Содержимое ячеек по рядам
+     */
+    private final CellContent[] contents;
+
+    public ObjectGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        contents = new CellContent[width * height];
+        Arrays.fill(contents, EmptyCellContent.instance);
+    }
+
+    private ObjectGrid(ObjectGrid parent) {
+        width = parent.width;
+        height = parent.height;
+        contents = parent.contents.clone();
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public CellContent get(int index) {
+        return contents[index];
+    }
+
+    @Override
+    public CellContent set(int index, CellContent content) {
+        CellContent old = contents[index];
+        contents[index] = content;
+        return old;
+    }
+
+    @Override
+    public ObjectGrid fork() {
+        return new ObjectGrid(this);
+    }
+
+    @Override
+    public void rebind(Map<CellContent, CellContent> replacements) {
+        if (replacements.isEmpty()) return;
+        for (int i = 0; i < contents.length; i++) {
+            CellContent replacement = replacements.get(contents[i]);
+            if (replacement != null) contents[i] = replacement;
+        }
+    }
+}
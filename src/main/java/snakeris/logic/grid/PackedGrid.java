@@ -0,0 +1,190 @@
+package snakeris.logic.grid;
+
+import snakeris.logic.cell.*;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Компактное хранилище ячеек в массиве примитивов.
+ * Для каждой ячейки хранится одно число: тип содержимого (младшие {@link #TYPE_BITS} бита) и значение (остальные биты):
+ * питательность для еды или номер владельца для змеи и падающего блока.
+ * Объекты содержимого при чтении восстанавливаются по типу и значению.
+ * Поддерживает только стандартные типы содержимого из пакета {@link snakeris.logic.cell}.
+ * <p>
+ * Массив копируется при записи кусками ({@link CowIntArray}), поэтому копия {@link #fork()} стоит пропорционально
+ *  количеству кусков и владельцев, а не ячеек: копия поля копирует только куски, которые меняют её такты.
+ */
+public class PackedGrid implements Grid {
+    public static final byte EMPTY = 0;
+    public static final byte STATIC = 1;
+    public static final byte FOOD = 2;
+    public static final byte SNAKE = 3;
+    public static final byte FALLING = 4;
+
+    private static final int TYPE_BITS = 3;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    private final int width;
+    private final int height;
+    /**
+     * Тип и значение ячеек по рядам: {@code value << TYPE_BITS | type}
+     */
+    private final CowIntArray codes;
+    /**
+     * Содержимое, соответствующее номеру владельца (змеи или падающего блока).
+     * Все ячейки одного владельца отдают один и тот же объект.
+     */
+    private CellContent[] owners;
+    /**
+     * Количество ячеек, ссылающихся на номер владельца. Номер освобождается, когда ячеек не остаётся.
+     */
+    private int[] ownerCells;
+    /**
+     * Номера владельцев по объекту содержимого владельца
+     */
+    private final Map<CellContent, Integer> ownerIds;
+    /**
+     * Освобождённые номера владельцев для повторного использования
+     */
+    private int[] freeIds;
+    private int freeCount;
+    /**
+     * Следующий ещё не выданный номер владельца
+     */
+    private int nextId;
+
+    public PackedGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        codes = new CowIntArray(width * height, EMPTY);
+        owners = new CellContent[16];
+        ownerCells = new int[16];
+        ownerIds = new IdentityHashMap<>();
+        freeIds = new int[16];
+    }
+
+    private PackedGrid(PackedGrid parent) {
+        width = parent.width;
+        height = parent.height;
+        codes = parent.codes.fork();
+        owners = parent.owners.clone();
+        ownerCells = parent.ownerCells.clone();
+        ownerIds = new IdentityHashMap<>(parent.ownerIds);
+        freeIds = parent.freeIds.clone();
+        freeCount = parent.freeCount;
+        nextId = parent.nextId;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Тип содержимого ячейки без создания объекта содержимого
+     */
+    public byte getType(int index) {
+        return (byte) (codes.get(index) & TYPE_MASK);
+    }
+
+    @Override
+    public CellContent get(int index) {
+        int code = codes.get(index);
+        switch (code & TYPE_MASK) {
+            case STATIC:
+                return StaticCellContent.instance;
+            case FOOD:
+                return FoodCellContent.of(code >> TYPE_BITS);
+            case SNAKE:
+            case FALLING:
+                return owners[code >>> TYPE_BITS];
+            default:
+                return EmptyCellContent.instance;
+        }
+    }
+
+    @Override
+    public CellContent set(int index, CellContent content) {
+        int oldCode = codes.get(index);
+        CellContent old = get(index);
+        int oldType = oldCode & TYPE_MASK;
+        int code;
+        if (content == EmptyCellContent.instance) {
+            code = EMPTY;
+        } else if (content == StaticCellContent.instance) {
+            code = STATIC;
+        } else if (content instanceof FoodCellContent) {
+            int nutrition = ((FoodCellContent) content).nutrition;
+            if (nutrition << TYPE_BITS >> TYPE_BITS != nutrition) throw new IllegalArgumentException("Nutrition out of range: " + nutrition);
+            code = nutrition << TYPE_BITS | FOOD;
+        } else if (content instanceof SnakeCellContent) {
+            code = acquire(content) << TYPE_BITS | SNAKE;
+        } else if (content instanceof FallingBlockCellContent) {
+            code = acquire(content) << TYPE_BITS | FALLING;
+        } else {
+            throw new IllegalArgumentException("Unsupported cell content: " + content.getName());
+        }
+        //Номер освобождается после выдачи нового, чтобы запись того же владельца не меняла номер
+        if (oldType == SNAKE || oldType == FALLING) release(oldCode >>> TYPE_BITS);
+        codes.set(index, code);
+        return old;
+    }
+
+    /**
+     * Выдаёт номер владельца для ещё одной ячейки
+     * @param content содержимое ячеек змеи или падающего блока, одно на владельца
+     */
+    private int acquire(CellContent content) {
+        Integer id = ownerIds.get(content);
+        if (id == null) {
+            id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+            if (id >= owners.length) {
+                owners = Arrays.copyOf(owners, owners.length * 2);
+                ownerCells = Arrays.copyOf(ownerCells, ownerCells.length * 2);
+            }
+            owners[id] = content;
+            ownerIds.put(content, id);
+        }
+        ownerCells[id]++;
+        return id;
+    }
+
+    /**
+     * Освобождает номер владельца ячейкой. Когда ячеек владельца не остаётся, номер можно выдать другому.
+     */
+    private void release(int id) {
+        if (--ownerCells[id] > 0) return;
+        ownerIds.remove(owners[id]);
+        owners[id] = null;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Копия разделяет с хранилищем массив ячеек, таблица владельцев копируется
+     */
+    @Override
+    public PackedGrid fork() {
+        return new PackedGrid(this);
+    }
+
+    /**
+     * Заменяет содержимое в таблице владельцев, ячейки не меняются
+     */
+    @Override
+    public void rebind(Map<CellContent, CellContent> replacements) {
+        for (Map.Entry<CellContent, CellContent> entry : replacements.entrySet()) {
+            Integer id = ownerIds.remove(entry.getKey());
+            if (id == null) continue;
+            owners[id] = entry.getValue();
+            ownerIds.put(entry.getValue(), id);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package snakeris.logic.grid;
+
+import java.util.Arrays;
+
+/**
+ * Битовая карта поля по рядам: для каждого ряда массив long, по биту на ячейку.
+ * Массив ряда создаётся при первой установке бита в этом ряду, пока бит не установлен, ряд ничего не занимает.
+ * Для каждого ряда хранится количество установленных битов.
+ * Копия {@link #fork()} разделяет массивы рядов с исходной картой, ряд копируется при первом изменении.
+ */
+public class RowBits {
+    private final int width;
+    private final int height;
+    /**
+     * Количество слов long в ряду
+     */
+    private final int words;
+    /**
+     * Маска значимых битов последнего слова ряда
+     */
+    private final long lastWordMask;
+    /**
+     * Слова рядов. null - в ряду нет установленных битов.
+     */
+    private final long[][] rows;
+    /**
+     * Принадлежит ли массив ряда только этой карте. Общий ряд копируется перед изменением.
+     */
+    private final boolean[] owned;
+    /**
+     * Количество установленных битов в каждом ряду
+     */
+    private final int[] counts;
+
+    public RowBits(int width, int height) {
+        this.width = width;
+        this.height = height;
+        words = (width + 63) >>> 6;
+        lastWordMask = -1L >>> (words * 64 - width);
+        rows = new long[height][];
+        owned = new boolean[height];
+        counts = new int[height];
+    }
+
+    private RowBits(RowBits parent) {
+        width = parent.width;
+        height = parent.height;
+        words = parent.words;
+        lastWordMask = parent.lastWordMask;
+        rows = parent.rows.clone();
+        owned = new boolean[height];
+        counts = parent.counts.clone();
+    }
+
+    /**
+     * Копия карты, разделяющая с ней массивы рядов. После вызова ряды общие и для этой карты.
+     */
+    public RowBits fork() {
+        Arrays.fill(owned, false);
+        return new RowBits(this);
+    }
+
+    /**
+     * Массив ряда, который можно менять: создаётся или копируется, если ряд пустой или общий
+     */
+    private long[] writableRow(int y) {
+        long[] row = rows[y];
+        if (row == null) {
+            row = rows[y] = new long[words];
+            owned[y] = true;
+        } else if (!owned[y]) {
+            row = rows[y] = row.clone();
+            owned[y] = true;
+        }
+        return row;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Количество слов long в ряду
+     */
+    public int getWords() {
+        return words;
+    }
+
+    public boolean get(int x, int y) {
+        long[] row = rows[y];
+        return row != null && (row[x >>> 6] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y) {
+        long[] row = rows[y];
+        long bit = 1L << x;
+        if (row != null && (row[x >>> 6] & bit) != 0) return;
+        if (row == null || !owned[y]) row = writableRow(y);
+        row[x >>> 6] |= bit;
+        counts[y]++;
+    }
+
+    public void clear(int x, int y) {
+        long[] row = rows[y];
+        long bit = 1L << x;
+        if (row == null || (row[x >>> 6] & bit) == 0) return;
+        if (!owned[y]) row = writableRow(y);
+        row[x >>> 6] &= ~bit;
+        counts[y]--;
+    }
+
+    /**
+     * Количество установленных битов в ряду
+     */
+    public int count(int y) {
+        return counts[y];
+    }
+
+    /**
+     * Установлены ли все биты ряда. Сравнивает слова ряда с полной маской.
+     */
+    public boolean isFull(int y) {
+        long[] row = rows[y];
+        if (row == null) return false;
+        for (int i = 0; i < words - 1; i++) {
+            if (row[i] != -1L) return false;
+        }
+        return row[words - 1] == lastWordMask;
+    }
+
+    /**
+     * Пересекается ли ряд с маской
+     * @param y ряд
+     * @param mask слова маски
+     * @param fromWord номер слова ряда, которому соответствует первое слово маски
+     */
+    public boolean intersects(int y, long[] mask, int fromWord) {
+        long[] row = rows[y];
+        if (row == null) return false;
+        for (int i = 0; i < mask.length; i++) {
+            if ((row[fromWord + i] & mask[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Слово ряда
+     * @param y ряд
+     * @param word номер слова
+     */
+    public long word(int y, int word) {
+        long[] row = rows[y];
+        return row == null ? 0 : row[word];
+    }
+}
@@ -0,0 +1,27 @@
+package snakeris.logic.grid;
+
+/**
+ * Хранилище, память которого растёт с количеством непустых ячеек, а не с площадью поля.
+ * Поле {@link snakeris.logic.Field} не ведёт для такого хранилища множество пустых ячеек {@link FreeCellIndex}
+ *  (оно занимает память на каждую ячейку), а ищет пустые ячейки через методы хранилища.
+ */
+public interface SparseGrid extends Grid {
+    /**
+     * Количество пустых ячеек в верхних rows рядах
+     */
+    int countEmpty(int rows);
+
+    /**
+     * Пустая ячейка с номером n среди пустых ячеек верхних rows рядов по порядку индексов
+     * @param n номер от 0 до {@link #countEmpty(int)}
+     * @return индекс ячейки или -1, если пустых ячеек меньше n+1
+     */
+    int findEmpty(int n, int rows);
+
+    /**
+     * Первая непустая ячейка с индексом не меньше from по порядку индексов.
+     * Пустые области хранилища пропускаются без чтения ячеек.
+     * @return индекс ячейки или -1, если непустых ячеек дальше нет
+     */
+    int nextOccupied(int from);
+}
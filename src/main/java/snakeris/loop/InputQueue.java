@@ -0,0 +1,118 @@
+package snakeris.loop;
+
+import snakeris.Direction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная очередь нажатий направления между одним потоком-источником (поток JavaFX или бот)
+ *  и одним потоком логики, без блокировок. Каждое событие хранит время нажатия.
+ * Источник добавляет события {@link #offer(Direction)}, поток логики на границе такта забирает
+ *  первый допустимый поворот {@link #nextTurn(Direction)}, остальные события остаются на следующие такты.
+ * Источник и потребитель - каждый ровно один поток.
+ */
+public class InputQueue {
+    private final Direction[] dirs;
+    private final long[] times;
+    private final int mask;
+    /**
+     * Номер следующего читаемого события, меняет только потребитель
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * Номер следующего записываемого события, меняет только источник.
+     * Запись номера после записи события публикует событие потребителю.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Последнее прочитанное источником значение {@link #head}, чтобы не читать его при каждой записи
+     */
+    private long cachedHead;
+    /**
+     * Время события последнего поворота, возвращённого {@link #nextTurn(Direction)}
+     */
+    private long turnTime;
+
+    /**
+     * @param capacity наибольшее количество необработанных событий, округляется вверх до степени двойки
+     */
+    public InputQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        dirs = new Direction[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return dirs.length;
+    }
+
+    /**
+     * Добавляет нажатие с текущим временем. Вызывается только потоком-источником.
+     * @return {@code false} если очередь заполнена и событие отброшено
+     */
+    public boolean offer(Direction dir) {
+        return offer(dir, System.nanoTime());
+    }
+
+    /**
+     * Добавляет нажатие. Вызывается только потоком-источником.
+     * @param time время нажатия по {@link System#nanoTime()}
+     * @return {@code false} если очередь заполнена и событие отброшено
+     */
+    public boolean offer(Direction dir, long time) {
+        if (dir == null) throw new IllegalArgumentException("Direction is null");
+        long t = tail.get();
+        if (t - cachedHead == dirs.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == dirs.length) return false;
+        }
+        int i = (int) t & mask;
+        dirs[i] = dir;
+        times[i] = time;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Забирает события до первого допустимого поворота: направление не совпадает с текущим и не противоположно ему
+     *  ({@link Direction#isOpposite(Direction)}). Недопустимые события перед ним отбрасываются, события после него остаются.
+     * Вызывается только потоком логики, не чаще раза за такт.
+     * @param current направление змейки перед тактом
+     * @return поворот или {@code null}, если допустимых поворотов нет
+     */
+    public Direction nextTurn(Direction current) {
+        long h = head.get();
+        long t = tail.get();
+        Direction turn = null;
+        while (h < t) {
+            int i = (int) h & mask;
+            Direction dir = dirs[i];
+            dirs[i] = null;
+            h++;
+            if (dir != current && !dir.isOpposite(current)) {
+                turn = dir;
+                turnTime = times[i];
+                break;
+            }
+        }
+        head.lazySet(h);
+        return turn;
+    }
+
+    /**
+     * Время нажатия последнего поворота, возвращённого {@link #nextTurn(Direction)}, по {@link System#nanoTime()}
+     */
+    public long getTurnTime() {
+        return turnTime;
+    }
+
+    /**
+     * Количество необработанных событий. Из потока-источника значение может быть больше фактического.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
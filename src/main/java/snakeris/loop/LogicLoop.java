@@ -0,0 +1,264 @@
+package snakeris.loop;
+
+import snakeris.Direction;
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Game;
+import snakeris.logic.Snake;
+import snakeris.logic.cell.CellContent;
+import snakeris.metrics.Histogram;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Поток логики игры с фиксированным шагом: такты выполняются с постоянной частотой независимо от отрисовки.
+ * Прошедшее время копится в аккумуляторе, каждый полный шаг аккумулятора - один такт. Если поток отстал
+ *  (например, из-за паузы сборщика мусора), он догоняет не больше {@link #MAX_CATCH_UP} тактов подряд,
+ *  остальное отставание отбрасывается ({@link #getDroppedTicks()}), и игра не ускоряется рывком.
+ * <p>
+ * Направление задаётся через очередь нажатий {@link InputQueue}, которая разбирается на границе такта.
+ * <p>
+ * Игра после {@link #start()} принадлежит потоку логики, другие потоки её не читают: результаты тактов передаются
+ *  кадрами {@link TickFrame}, которые поток отрисовки забирает {@link #drain(Consumer)}. Слушатели поля и игры
+ *  вызываются в потоке логики.
+ */
+public class LogicLoop implements AutoCloseable {
+    /**
+     * Сколько тактов подряд поток выполняет, догоняя расписание
+     */
+    public static final int MAX_CATCH_UP = 5;
+
+    private final Game game;
+    private final Predicate<Direction> step;
+    private final long stepNanos;
+    private final Thread thread;
+    /**
+     * Сколько нажатий может ждать обработки
+     */
+    public static final int INPUT_CAPACITY = 16;
+
+    /**
+     * Нажатия направления, по одному допустимому повороту на такт
+     */
+    private final InputQueue input = new InputQueue(INPUT_CAPACITY);
+    /**
+     * Задержка поворота от нажатия до такта, в котором он применён, нс
+     */
+    private final Histogram inputLatency = new Histogram();
+    /**
+     * Кадры, ещё не забранные потоком отрисовки
+     */
+    private final Queue<TickFrame> frames = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private volatile boolean paused = false;
+    private volatile long droppedTicks = 0;
+    private volatile Throwable failure;
+
+    /**
+     * Изменения ячеек текущего такта, собираемые слушателем поля
+     */
+    private int[] indices = new int[16];
+    private CellContent[] olds = new CellContent[16];
+    private CellContent[] news = new CellContent[16];
+    private int count = 0;
+
+    /**
+     * @param game игра, такты которой выполняет поток
+     * @param ticksPerSecond частота тактов, больше 0
+     */
+    public LogicLoop(Game game, double ticksPerSecond) {
+        this(game, game::step, ticksPerSecond);
+    }
+
+    /**
+     * @param game игра, такты которой выполняет поток
+     * @param step выполняет такт игры с новым направлением (или {@code null}) и возвращает, жива ли змейка,
+     *             например с записью в журнал {@link snakeris.journal.GameRecorder#step(Direction)}
+     * @param ticksPerSecond частота тактов, больше 0
+     */
+    public LogicLoop(Game game, Predicate<Direction> step, double ticksPerSecond) {
+        if (!(ticksPerSecond > 0)) throw new IllegalArgumentException("Tick rate must be positive");
+        this.game = game;
+        this.step = step;
+        this.stepNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / ticksPerSecond));
+        game.getField().addBatchListener(this::record);
+        thread = new Thread(this::run, "snakeris-logic");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Запускает поток логики. Первый такт выполняется через один шаг.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Добавляет нажатие направления. Каждый такт применяет один допустимый поворот из очереди по порядку нажатий,
+     *  поэтому два нажатия за один такт выполняются в двух тактах подряд.
+     * Вызывается всегда из одного и того же потока, например потока JavaFX или бота.
+     * @return {@code false} если необработанных нажатий уже {@link #INPUT_CAPACITY} и нажатие отброшено
+     */
+    public boolean offerDirection(Direction dir) {
+        return input.offer(dir);
+    }
+
+    /**
+     * Задержка поворота от нажатия до такта, в котором он применён, нс
+     */
+    public Histogram getInputLatency() {
+        return inputLatency;
+    }
+
+    /**
+     * Приостанавливает или продолжает такты. После паузы расписание начинается заново, пропущенное время не догоняется.
+     */
+    public void setPaused(boolean paused) {
+        synchronized (this) {
+            this.paused = paused;
+            notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Передаёт кадры завершённых тактов в порядке тактов
+     * @return количество переданных кадров
+     * @throws IllegalStateException если поток логики завершился с ошибкой
+     */
+    public int drain(Consumer<TickFrame> consumer) {
+        int drained = 0;
+        TickFrame frame;
+        while ((frame = frames.poll()) != null) {
+            consumer.accept(frame);
+            drained++;
+        }
+        Throwable error = failure;
+        if (error != null) throw new IllegalStateException("Logic thread failed", error);
+        return drained;
+    }
+
+    /**
+     * Длительность такта, нс
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * Сколько тактов отброшено из-за отставания больше {@link #MAX_CATCH_UP} тактов
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * Завершился ли поток логики: змейка умерла, произошла ошибка или вызван {@link #close()}
+     */
+    public boolean isFinished() {
+        return !thread.isAlive() && thread.getState() != Thread.State.NEW;
+    }
+
+    /**
+     * Останавливает поток логики и ждёт его завершения. После этого игру можно читать из вызывающего потока.
+     */
+    @Override
+    public void close() {
+        running = false;
+        setPaused(false);
+        thread.interrupt();
+        if (thread.getState() == Thread.State.NEW) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            long previous = System.nanoTime();
+            long accumulator = 0;
+            while (running) {
+                if (paused) {
+                    awaitResume();
+                    previous = System.nanoTime();
+                    accumulator = 0;
+                    continue;
+                }
+                long now = System.nanoTime();
+                accumulator += now - previous;
+                previous = now;
+                int steps = 0;
+                while (accumulator >= stepNanos && running && !paused) {
+                    if (steps == MAX_CATCH_UP) {
+                        droppedTicks += accumulator / stepNanos;
+                        accumulator %= stepNanos;
+                        break;
+                    }
+                    accumulator -= stepNanos;
+                    //Время такта по расписанию, а не фактическое
+                    if (!tick(now - accumulator)) return;
+                    steps++;
+                }
+                //Ждёт до следующего такта по расписанию; раннее пробуждение только добавит время в аккумулятор
+                LockSupport.parkNanos(stepNanos - accumulator);
+            }
+        } catch (InterruptedException e) {
+            //Остановка через close()
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    private synchronized void awaitResume() throws InterruptedException {
+        while (paused && running) {
+            wait();
+        }
+    }
+
+    /**
+     * Выполняет такт и публикует его кадр
+     * @return {@code true} если змейка жива
+     */
+    private boolean tick(long time) {
+        Snake snake = game.getSnake();
+        int width = game.getField().getWidth();
+        int headBefore = snake.getHeadY() * width + snake.getHeadX();
+        int tailBefore = snake.getTailIndex();
+        count = 0;
+        Direction turn = input.nextTurn(snake.getDir());
+        if (turn != null) inputLatency.record(System.nanoTime() - input.getTurnTime());
+        boolean alive = step.test(turn);
+        frames.add(new TickFrame(game.getTick(), time,
+                Arrays.copyOf(indices, count), Arrays.copyOf(olds, count), Arrays.copyOf(news, count),
+                headBefore, snake.getHeadY() * width + snake.getHeadX(), tailBefore, snake.getTailIndex(),
+                snake.getDir(), game.getScore(), alive));
+        return alive;
+    }
+
+    /**
+     * Запоминает изменения ячеек такта для кадра
+     */
+    private void record(CellChangeBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+                olds = Arrays.copyOf(olds, count * 2);
+                news = Arrays.copyOf(news, count * 2);
+            }
+            indices[count] = batch.getIndex(i);
+            olds[count] = batch.getOld(i);
+            news[count] = batch.getNew(i);
+            count++;
+        }
+    }
+}
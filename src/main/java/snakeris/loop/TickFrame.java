@@ -0,0 +1,132 @@
+package snakeris.loop;
+
+import snakeris.Direction;
+import snakeris.logic.cell.CellContent;
+
+/**
+ * Результат одного такта игры для потока отрисовки: изменённые ячейки, положение змейки до и после такта, счёт.
+ * Создаётся потоком логики {@link LogicLoop} после такта и дальше не меняется.
+ */
+public final class TickFrame {
+    private final long tick;
+    private final long time;
+    private final int[] indices;
+    private final CellContent[] olds;
+    private final CellContent[] news;
+    private final int headBefore, headAfter;
+    private final int tailBefore, tailAfter;
+    private final Direction dir;
+    private final int score;
+    private final boolean alive;
+
+    TickFrame(long tick, long time, int[] indices, CellContent[] olds, CellContent[] news,
+              int headBefore, int headAfter, int tailBefore, int tailAfter, Direction dir, int score, boolean alive) {
+        this.tick = tick;
+        this.time = time;
+        this.indices = indices;
+        this.olds = olds;
+        this.news = news;
+        this.headBefore = headBefore;
+        this.headAfter = headAfter;
+        this.tailBefore = tailBefore;
+        this.tailAfter = tailAfter;
+        this.dir = dir;
+        this.score = score;
+        this.alive = alive;
+    }
+
+    /**
+     * Номер такта игры
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Время, на которое такт приходился по расписанию ({@link System#nanoTime()}).
+     * Такты идут через равные промежутки, даже если поток логики выполнил их с опозданием.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Количество изменённых за такт ячеек
+     */
+    public int size() {
+        return indices.length;
+    }
+
+    /**
+     * Индекс изменённой ячейки {@code y*width + x}
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Содержимое ячейки до такта
+     */
+    public CellContent getOld(int i) {
+        return olds[i];
+    }
+
+    /**
+     * Содержимое ячейки после такта
+     */
+    public CellContent getNew(int i) {
+        return news[i];
+    }
+
+    /**
+     * Содержимое ячейки до такта
+     * @param index индекс ячейки
+     * @return содержимое до такта или {@code null}, если ячейка за такт не менялась
+     */
+    public CellContent getOldAt(int index) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] == index) return olds[i];
+        }
+        return null;
+    }
+
+    /**
+     * Индекс ячейки головы змейки до такта
+     */
+    public int getHeadBefore() {
+        return headBefore;
+    }
+
+    public int getHeadAfter() {
+        return headAfter;
+    }
+
+    /**
+     * Индекс ячейки хвоста змейки до такта или -1, если тела не было
+     */
+    public int getTailBefore() {
+        return tailBefore;
+    }
+
+    public int getTailAfter() {
+        return tailAfter;
+    }
+
+    /**
+     * Направление змейки после такта
+     */
+    public Direction getDir() {
+        return dir;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Жива ли змейка после такта. Кадр с мёртвой змейкой последний.
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+}
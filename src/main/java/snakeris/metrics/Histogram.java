@@ -0,0 +1,123 @@
+package snakeris.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма неотрицательных значений (наносекунды, ячейки, байты) с логарифмическими корзинами:
+ *  на каждую степень двойки приходится {@link #SUB_BUCKETS} корзины, т.е. погрешность квантиля не больше 25%.
+ * Запись без блокировок, из любых потоков. Чтение во время записи даёт приблизительный результат.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 2;
+    /**
+     * Корзин на степень двойки
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * Значения меньше {@link #SUB_BUCKETS} попадают в отдельные корзины, остальные - по старшему биту и следующим за ним {@link #SUB_BITS} битам
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Добавляет значение. Отрицательные значения считаются нулём.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Номер корзины значения
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Наименьшее значение корзины
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Значение, не меньше которого доля q значений. Возвращается наибольшее значение корзины, в которую попадает квантиль,
+     *  но не больше максимума.
+     * @param q квантиль от 0 до 1, например 0.99
+     * @return значение квантиля или 0, если значений нет
+     */
+    public long getQuantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        long total = getCount();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Очищает гистограмму. Значения, записываемые во время очистки, могут учитываться частично.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Количество, среднее, медиана, 99-й перцентиль и максимум
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d",
+                getCount(), getMean(), getQuantile(0.5), getQuantile(0.99), getMax());
+    }
+}
@@ -0,0 +1,23 @@
+package snakeris.metrics;
+
+import snakeris.metrics.TickMetrics.Phase;
+
+/**
+ * Запись тактов во внешний профилировщик. Реализация для JFR ({@code JfrEvents}) собирается отдельно
+ *  и загружается {@link TickProbe} по имени, поэтому основные исходники собираются и на JDK 8 без jdk.jfr.
+ */
+interface TickEvents {
+    /**
+     * Начинает событие такта, если события записываются
+     * @return событие или {@code null}
+     */
+    Object beginTick();
+
+    /**
+     * Завершает событие такта
+     * @param tick событие из {@link #beginTick()}
+     * @param phaseNanos время этапов за такт по {@link Phase#ordinal()}
+     * @param allocated выделено байт или -1, если неизвестно
+     */
+    void commitTick(Object tick, long[] phaseNanos, int cellsChanged, int fallingBlocks, int rowsCleared, long allocated);
+}
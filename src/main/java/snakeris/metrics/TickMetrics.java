@@ -0,0 +1,145 @@
+package snakeris.metrics;
+
+/**
+ * Метрики тактов игровой логики: гистограммы времени тактов и их этапов, количества изменённых ячеек,
+ *  падающих блоков, удалённых рядов и выделенной памяти за такт.
+ * Метрики подключаются к полю ({@code Field#setMetrics}), одни метрики можно подключить к нескольким полям,
+ *  в том числе тактуемым в разных потоках. Поле без метрик проверяет только отсутствие {@link TickProbe}.
+ * <p>
+ * Такт - внешний такт поля ({@code Field#beginTick()}...{@code Field#commitTick()}), обычно {@code Game#step}.
+ * Время этапов включает вложенные этапы: падение блоков включает удаление рядов, удаление рядов - генерацию еды за ряды.
+ * Если доступен JFR, каждый такт записывается событием {@code snakeris.Tick} с разбивкой по этапам.
+ */
+public class TickMetrics {
+    /**
+     * Системное свойство, включающее общие метрики {@link #global()} для всех создаваемых полей
+     */
+    public static final String PROPERTY = "snakeris.metrics";
+
+    /**
+     * Измеряемые этапы
+     */
+    public enum Phase {
+        /**
+         * Такт целиком, включая оповещение слушателей
+         */
+        TICK,
+        /**
+         * Падение, остановка и трансформация блоков ({@code Field#action()})
+         */
+        FALL,
+        /**
+         * Ход змейки ({@code Snake#move()})
+         */
+        SNAKE_MOVE,
+        /**
+         * Удаление собранных рядов
+         */
+        ROW_REMOVE,
+        /**
+         * Генерация еды
+         */
+        FOOD,
+        /**
+         * Оповещение слушателей изменений ячеек, в том числе отрисовки
+         */
+        DISPATCH
+    }
+
+    private static final TickMetrics GLOBAL = Boolean.getBoolean(PROPERTY) ? new TickMetrics() : null;
+
+    private final Histogram[] latencies = new Histogram[Phase.values().length];
+    private final Histogram cellsChanged = new Histogram();
+    private final Histogram fallingBlocks = new Histogram();
+    private final Histogram rowsCleared = new Histogram();
+    private final Histogram allocatedBytes = new Histogram();
+
+    public TickMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Общие метрики, подключаемые к каждому новому полю, если задано свойство {@link #PROPERTY}
+     * @return метрики или {@code null}, если свойство не задано
+     */
+    public static TickMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Состояние измерения для одного поля. Каждому полю нужен свой экземпляр.
+     */
+    public TickProbe newProbe() {
+        return new TickProbe(this);
+    }
+
+    /**
+     * Время этапа, нс
+     */
+    public Histogram getLatency(Phase phase) {
+        return latencies[phase.ordinal()];
+    }
+
+    /**
+     * Ячеек с изменившимся содержимым за такт (переданных слушателям)
+     */
+    public Histogram getCellsChanged() {
+        return cellsChanged;
+    }
+
+    /**
+     * Падающих блоков на поле в конце такта
+     */
+    public Histogram getFallingBlocks() {
+        return fallingBlocks;
+    }
+
+    /**
+     * Удалённых рядов за такт
+     */
+    public Histogram getRowsCleared() {
+        return rowsCleared;
+    }
+
+    /**
+     * Байт, выделенных потоком такта за такт. Не заполняется, если JVM не считает выделения потоков.
+     */
+    public Histogram getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Количество измеренных тактов
+     */
+    public long getTicks() {
+        return getLatency(Phase.TICK).getCount();
+    }
+
+    public void reset() {
+        for (Histogram latency : latencies) {
+            latency.reset();
+        }
+        cellsChanged.reset();
+        fallingBlocks.reset();
+        rowsCleared.reset();
+        allocatedBytes.reset();
+    }
+
+    /**
+     * Сводка по всем гистограммам, по строке на гистограмму
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            sb.append(phase).append(" ns: ").append(getLatency(phase)).append('\n');
+        }
+        sb.append("cells changed: ").append(cellsChanged).append('\n');
+        sb.append("falling blocks: ").append(fallingBlocks).append('\n');
+        sb.append("rows cleared: ").append(rowsCleared).append('\n');
+        sb.append("allocated bytes: ").append(allocatedBytes);
+        return sb.toString();
+    }
+}
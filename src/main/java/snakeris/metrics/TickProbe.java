@@ -0,0 +1,138 @@
+package snakeris.metrics;
+
+import snakeris.metrics.TickMetrics.Phase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Измерение тактов одного поля: хранит состояние текущего такта и записывает результаты в {@link TickMetrics}.
+ * Вызывается из потока, выполняющего такты поля. Время этапа засекается вызывающим кодом:
+ * <pre>{@code
+ * long start = probe != null ? System.nanoTime() : 0;
+ * ...
+ * if (probe != null) probe.phase(Phase.FOOD, start);
+ * }</pre>
+ */
+public class TickProbe {
+    /**
+     * Счётчик выделенной потоками памяти или {@code null}, если JVM его не поддерживает
+     */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+    /**
+     * Класс реализации событий JFR. Собирается только профилем jfr на JDK 11+.
+     */
+    private static final String JFR_EVENTS = "snakeris.metrics.JfrEvents";
+    /**
+     * События JFR или {@code null}, если JFR недоступен или реализация не собрана
+     */
+    private static final TickEvents EVENTS = loadEvents();
+
+    private final TickMetrics metrics;
+    /**
+     * Идёт ли такт
+     */
+    private boolean inTick;
+    private long tickStart;
+    private long allocatedAtStart;
+    private int rowsCleared;
+    /**
+     * Время этапов текущего такта, нс
+     */
+    private final long[] phaseNanos = new long[Phase.values().length];
+    /**
+     * Событие JFR текущего такта, если оно записывается
+     */
+    private Object event;
+
+    TickProbe(TickMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Начало внешнего такта поля
+     */
+    public void tickStarted() {
+        inTick = true;
+        rowsCleared = 0;
+        event = EVENTS != null ? EVENTS.beginTick() : null;
+        allocatedAtStart = allocatedBytes();
+        tickStart = System.nanoTime();
+    }
+
+    /**
+     * Конец внешнего такта поля, после оповещения слушателей
+     * @param cellsChanged количество изменённых за такт ячеек
+     * @param fallingBlocks количество падающих блоков после такта
+     */
+    public void tickFinished(int cellsChanged, int fallingBlocks) {
+        long nanos = System.nanoTime() - tickStart;
+        long allocated = ALLOCATIONS != null ? allocatedBytes() - allocatedAtStart : -1;
+        inTick = false;
+        metrics.getLatency(Phase.TICK).record(nanos);
+        metrics.getCellsChanged().record(cellsChanged);
+        metrics.getFallingBlocks().record(fallingBlocks);
+        metrics.getRowsCleared().record(rowsCleared);
+        if (allocated >= 0) metrics.getAllocatedBytes().record(allocated);
+        if (event != null) {
+            phaseNanos[Phase.TICK.ordinal()] = nanos;
+            EVENTS.commitTick(event, phaseNanos, cellsChanged, fallingBlocks, rowsCleared, allocated);
+            event = null;
+        }
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = 0;
+        }
+    }
+
+    /**
+     * Завершение этапа
+     * @param phase этап, кроме {@link Phase#TICK}
+     * @param start время начала этапа по {@link System#nanoTime()}
+     */
+    public void phase(Phase phase, long start) {
+        long nanos = System.nanoTime() - start;
+        metrics.getLatency(phase).record(nanos);
+        if (inTick) phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Удалены ряды
+     */
+    public void rowsCleared(int count) {
+        rowsCleared += count;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        if (!counter.isThreadAllocatedMemorySupported()) return null;
+        try {
+            if (!counter.isThreadAllocatedMemoryEnabled()) counter.setThreadAllocatedMemoryEnabled(true);
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+        return counter;
+    }
+
+    /**
+     * Загружает реализацию событий JFR, если JFR есть в JVM и реализация собрана
+     */
+    private static TickEvents loadEvents() {
+        ClassLoader loader = TickProbe.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.Event", false, loader);
+            return (TickEvents) Class.forName(JFR_EVENTS, true, loader).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+}
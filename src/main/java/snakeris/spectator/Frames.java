@@ -0,0 +1,230 @@
+package snakeris.spectator;
+
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Field;
+import snakeris.logic.cell.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Формат кадров трансляции поля зрителям.
+ * <pre>
+ * кадр:          длина данных (int), данные
+ * данные:        тип (byte), номер кадра (varint), содержимое кадра
+ * ключевой кадр: ширина, высота (varint), затем ячейки по рядам серией: длина серии (varint), содержимое
+ * разностный:    количество изменений (varint), затем для каждого: сдвиг индекса ячейки от предыдущего (zigzag varint), содержимое
+ * содержимое:    код (byte), у еды ещё питательность (zigzag varint)
+ * </pre>
+ * Разностный кадр - пачка изменений ячеек за такт ({@link CellChangeBatch}), номера разностных кадров идут подряд.
+ * Ключевой кадр описывает всё поле после разностного кадра с тем же номером, с него зритель может начать просмотр.
+ */
+final class Frames {
+    static final byte KEY = 1;
+    static final byte DELTA = 2;
+    /**
+     * Коды содержимого
+     */
+    private static final byte EMPTY = 0, STATIC = 1, SNAKE = 2, FALLING = 3, FOOD = 4;
+    /**
+     * Наибольший размер содержимого ячейки в кадре: код и питательность
+     */
+    private static final int MAX_CONTENT = 1 + 5;
+    /**
+     * Наибольший размер кадра без ячеек: длина, тип, номер, два числа
+     */
+    private static final int MAX_HEADER = 4 + 1 + 10 + 5 + 5;
+    /**
+     * Наибольший размер кадра, который принимает зритель
+     */
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+    /**
+     * Наибольший размер буфера кодирования
+     */
+    static final int MAX_BUFFER = Integer.MAX_VALUE - 8;
+
+    private Frames() {
+    }
+
+    /**
+     * Наибольший размер разностного кадра из count изменений
+     */
+    static long maxDeltaSize(int count) {
+        return MAX_HEADER + (long) count * (5 + MAX_CONTENT);
+    }
+
+    /**
+     * Записывает в буфер разностный кадр с изменениями пачки
+     */
+    static void writeDelta(ByteBuffer out, long number, CellChangeBatch batch) {
+        int start = begin(out, DELTA, number);
+        writeVarLong(out, batch.size());
+        int previous = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            int index = batch.getIndex(i);
+            writeVarLong(out, zigzag(index - previous));
+            writeContent(out, batch.getNew(i));
+            previous = index;
+        }
+        end(out, start);
+    }
+
+    /**
+     * Записывает в буфер ключевой кадр с текущим содержимым поля.
+     * Размер кадра заранее не известен, буфер увеличивается по мере записи.
+     * Пустые ячейки между непустыми пишутся одной серией без чтения ({@link Field#nextNonEmpty(int)}),
+     *  поэтому для разреженного поля время записи зависит от количества непустых ячеек, а не от площади.
+     * @return буфер с кадром: переданный или новый, если переданному не хватило места
+     */
+    static ByteBuffer writeKey(ByteBuffer out, long number, Field field) {
+        out = ensure(out, MAX_HEADER);
+        int start = begin(out, KEY, number);
+        int width = field.getWidth();
+        int cells = width * field.getHeight();
+        writeVarLong(out, width);
+        writeVarLong(out, field.getHeight());
+        for (int i = 0; i < cells; ) {
+            out = ensure(out, 5 + MAX_CONTENT);
+            int next = field.nextNonEmpty(i);
+            if (next != i) {
+                int end = next < 0 ? cells : next;
+                writeVarLong(out, end - i);
+                writeContent(out, EmptyCellContent.instance);
+                i = end;
+                continue;
+            }
+            //Подряд идущие одинаковые непустые ячейки пишутся одной серией
+            CellContent content = field.getContent(i % width, i / width);
+            int run = 1;
+            while (i + run < cells && content.equals(field.getContent((i + run) % width, (i + run) / width))) {
+                run++;
+            }
+            writeVarLong(out, run);
+            writeContent(out, content);
+            i += run;
+        }
+        end(out, start);
+        return out;
+    }
+
+    /**
+     * Буфер, в котором после текущей позиции есть место для extra байт: переданный или увеличенная копия
+     * @throws IllegalStateException если кадр не помещается в массив
+     */
+    private static ByteBuffer ensure(ByteBuffer out, int extra) {
+        if (out.remaining() >= extra) return out;
+        long needed = (long) out.position() + extra;
+        long capacity = Math.max(needed, 2L * out.capacity());
+        if (needed > MAX_BUFFER) throw new IllegalStateException("Frame is too large: " + needed + " bytes");
+        ByteBuffer grown = ByteBuffer.allocate((int) Math.min(capacity, MAX_BUFFER));
+        out.flip();
+        grown.put(out);
+        return grown;
+    }
+
+    private static int begin(ByteBuffer out, byte type, long number) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(type);
+        writeVarLong(out, number);
+        return start;
+    }
+
+    private static void end(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    /**
+     * @throws IllegalArgumentException если содержимое не передаётся зрителям
+     */
+    private static void writeContent(ByteBuffer out, CellContent content) {
+        if (content instanceof FoodCellContent) {
+            out.put(FOOD);
+            writeVarLong(out, zigzag(((FoodCellContent) content).nutrition));
+            return;
+        }
+        switch (content.getName()) {
+            case EmptyCellContent.NAME:
+                out.put(EMPTY);
+                break;
+            case StaticCellContent.NAME:
+                out.put(STATIC);
+                break;
+            case SnakeCellContent.NAME:
+                out.put(SNAKE);
+                break;
+            case FallingBlockCellContent.NAME:
+                out.put(FALLING);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported cell content " + content.getName());
+        }
+    }
+
+    /**
+     * Читает содержимое ячейки. Змейка и падающие блоки читаются как {@link MirrorCellContent}.
+     */
+    static CellContent readContent(ByteBuffer in) throws IOException {
+        byte code = in.get();
+        switch (code) {
+            case EMPTY:
+                return EmptyCellContent.instance;
+            case STATIC:
+                return StaticCellContent.instance;
+            case SNAKE:
+                return MirrorCellContent.SNAKE;
+            case FALLING:
+                return MirrorCellContent.FALLING;
+            case FOOD:
+                long nutrition = unzigzag(readVarLong(in));
+                if (nutrition == 0 || nutrition != (int) nutrition) throw new IOException("Bad food nutrition " + nutrition);
+                return FoodCellContent.of((int) nutrition);
+            default:
+                throw new IOException("Unknown cell content code " + code);
+        }
+    }
+
+    static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b;
+            try {
+                b = in.get();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated frame", e);
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in frame");
+    }
+
+    /**
+     * Читает неотрицательное число не больше max
+     */
+    static int readVarInt(ByteBuffer in, int max) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > max) throw new IOException("Value out of range in frame: " + value);
+        return (int) value;
+    }
+
+    /**
+     * Знаковое число в беззнаковое: малые по модулю числа дают малые значения
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,57 @@
+package snakeris.spectator;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+import snakeris.logic.Field;
+import snakeris.ui.FieldPaneMapping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Окно зрителя: подключается к трансляции игры {@link SpectatorServer} и отображает поле через {@link FieldPaneMapping}.
+ * Аргументы: хост (localhost) и порт ({@link SpectatorServer#DEFAULT_PORT}).
+ */
+public class SpectatorApp extends Application {
+    /**
+     * Размер ячейки поля в пикселях
+     */
+    private static final int GRID_SIZE = 20;
+
+    private SpectatorClient client;
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage primaryStage) {
+        List<String> args = getParameters().getRaw();
+        String host = args.size() > 0 ? args.get(0) : "localhost";
+        int port = args.size() > 1 ? Integer.parseInt(args.get(1)) : SpectatorServer.DEFAULT_PORT;
+        try {
+            client = new SpectatorClient(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Field field = client.getField();
+        Pane root = new Pane();
+        root.setPrefSize(field.getWidth() * GRID_SIZE, field.getHeight() * GRID_SIZE);
+        new FieldPaneMapping(field, root, GRID_SIZE);
+        //Кадры принимаются в отдельном потоке, поле меняется в потоке JavaFX
+        client.start(Platform::runLater);
+        primaryStage.setTitle("Snakeris - " + host + ":" + port);
+        primaryStage.setScene(new Scene(root));
+        primaryStage.show();
+    }
+
+    @Override
+    public void stop() throws IOException {
+        if (client != null) client.close();
+    }
+}
@@ -0,0 +1,227 @@
+package snakeris.spectator;
+
+import snakeris.logic.Field;
+import snakeris.logic.cell.CellContent;
+import snakeris.logic.grid.ObjectGrid;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Зритель трансляции {@link SpectatorServer}. Повторяет транслируемое поле в своём поле {@link #getField()},
+ *  поэтому его можно отображать теми же средствами, что и игру, например {@link snakeris.ui.FieldPaneMapping}.
+ * Змейка и падающие блоки в поле зрителя - {@link snakeris.logic.cell.MirrorCellContent}, игра в этом поле не идёт.
+ * Каждый кадр применяется одним тактом поля, слушатели поля получают его одной пачкой.
+ */
+public class SpectatorClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final Field field;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer frameBuffer = ByteBuffer.allocate(1024);
+    /**
+     * Номер последнего принятого кадра
+     */
+    private long received;
+    /**
+     * Номер последнего применённого к полю кадра
+     */
+    private volatile long applied;
+    private Thread thread;
+
+    /**
+     * Подключается к трансляции и ждёт ключевой кадр, по которому создаётся поле зрителя
+     * @throws IOException если подключиться не удалось или первый кадр не ключевой
+     */
+    public SpectatorClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        try {
+            ByteBuffer frame = readFrame();
+            if (frame == null || frame.get() != Frames.KEY) throw new IOException("Spectator stream must start with a key frame");
+            received = Frames.readVarLong(frame);
+            int width = Frames.readVarInt(frame, Integer.MAX_VALUE);
+            int height = Frames.readVarInt(frame, Integer.MAX_VALUE / Math.max(1, width));
+            field = new Field(new ObjectGrid(width, height), 0);
+            apply(readCells(frame, Frames.KEY, received));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Принимает и применяет к полю один кадр в текущем потоке
+     * @return {@code false} если трансляция закончилась
+     * @throws IOException при ошибке соединения или некорректном кадре
+     */
+    public boolean step() throws IOException {
+        Update update = receive();
+        if (update == null) return false;
+        apply(update);
+        return true;
+    }
+
+    /**
+     * Запускает поток, который принимает кадры и применяет их к полю через applier
+     *  (например {@code Platform::runLater}, если поле отображается в JavaFX).
+     * Поток завершается, когда трансляция заканчивается или соединение закрывается.
+     */
+    public void start(Executor applier) {
+        if (thread != null) throw new IllegalStateException("Already started");
+        thread = new Thread(() -> {
+            try {
+                Update update;
+                while ((update = receive()) != null) {
+                    Update next = update;
+                    applier.execute(() -> apply(next));
+                }
+            } catch (IOException e) {
+                if (channel.isOpen()) throw new IllegalStateException("Spectator stream failed", e);
+            }
+        }, "spectator-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Принимает кадр и декодирует изменения ячеек
+     * @return изменения или {@code null}, если трансляция закончилась
+     */
+    private Update receive() throws IOException {
+        ByteBuffer frame = readFrame();
+        if (frame == null) return null;
+        byte type = frame.get();
+        long number = Frames.readVarLong(frame);
+        if (type == Frames.KEY) {
+            int width = Frames.readVarInt(frame, Integer.MAX_VALUE);
+            int height = Frames.readVarInt(frame, Integer.MAX_VALUE);
+            if (width != field.getWidth() || height != field.getHeight()) throw new IOException("Field size changed");
+        } else if (type != Frames.DELTA) {
+            throw new IOException("Unknown frame type " + type);
+        } else if (number != received + 1) {
+            throw new IOException("Missing frames " + (received + 1) + ".." + (number - 1));
+        }
+        received = number;
+        return readCells(frame, type, number);
+    }
+
+    /**
+     * Читает ячейки кадра: у ключевого кадра все ячейки поля по порядку, у разностного - изменённые
+     */
+    private Update readCells(ByteBuffer frame, byte type, long number) throws IOException {
+        int cells = field.getWidth() * field.getHeight();
+        if (type == Frames.KEY) {
+            CellContent[] contents = new CellContent[cells];
+            for (int i = 0; i < cells; ) {
+                int run = Frames.readVarInt(frame, cells - i);
+                if (run == 0) throw new IOException("Empty run in key frame");
+                CellContent content = Frames.readContent(frame);
+                for (int end = i + run; i < end; i++) {
+                    contents[i] = content;
+                }
+            }
+            return new Update(null, contents, number);
+        }
+        int count = Frames.readVarInt(frame, cells);
+        int[] indices = new int[count];
+        CellContent[] contents = new CellContent[count];
+        long index = 0;
+        for (int i = 0; i < count; i++) {
+            index += Frames.unzigzag(Frames.readVarLong(frame));
+            if (index < 0 || index >= cells) throw new IOException("Cell index out of field " + index);
+            indices[i] = (int) index;
+            contents[i] = Frames.readContent(frame);
+        }
+        return new Update(indices, contents, number);
+    }
+
+    /**
+     * Применяет изменения к полю одним тактом
+     */
+    private void apply(Update update) {
+        int width = field.getWidth();
+        field.beginTick();
+        try {
+            for (int i = 0; i < update.contents.length; i++) {
+                int index = update.indices == null ? i : update.indices[i];
+                field.setContent(index % width, index / width, update.contents[i]);
+            }
+        } finally {
+            field.commitTick();
+        }
+        applied = update.number;
+    }
+
+    /**
+     * Читает данные следующего кадра
+     * @return буфер с данными кадра или {@code null}, если соединение закрыто между кадрами
+     */
+    private ByteBuffer readFrame() throws IOException {
+        lengthBuffer.clear();
+        if (!readFully(lengthBuffer, true)) return null;
+        int length = lengthBuffer.getInt(0);
+        if (length <= 0 || length > Frames.MAX_FRAME) throw new IOException("Bad frame length " + length);
+        if (frameBuffer.capacity() < length) frameBuffer = ByteBuffer.allocate(Math.max(length, frameBuffer.capacity() * 2));
+        frameBuffer.clear().limit(length);
+        readFully(frameBuffer, false);
+        frameBuffer.flip();
+        return frameBuffer;
+    }
+
+    /**
+     * @param atFrameStart конец потока до первого байта допустим
+     * @return {@code false} если поток закончился до первого байта
+     */
+    private boolean readFully(ByteBuffer buffer, boolean atFrameStart) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (atFrameStart && buffer.position() == 0) return false;
+                throw new EOFException("Spectator stream ended in the middle of a frame");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Поле зрителя. Изменяется в потоке, вызывающем {@link #step()}, или через applier из {@link #start(Executor)}.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Номер последнего применённого к полю кадра, сравнивается с {@link SpectatorServer#getFrameNumber()}
+     */
+    public long getFrameNumber() {
+        return applied;
+    }
+
+    /**
+     * Закрывает соединение, поток приёма кадров завершается
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Изменения ячеек одного кадра
+     */
+    private static class Update {
+        /**
+         * Индексы изменённых ячеек или {@code null}, если кадр ключевой и содержит все ячейки по порядку
+         */
+        final int[] indices;
+        final CellContent[] contents;
+        final long number;
+
+        Update(int[] indices, CellContent[] contents, long number) {
+            this.indices = indices;
+            this.contents = contents;
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package snakeris.spectator;
+
+import snakeris.listener.CellBatchListener;
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Field;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Транслирует изменения поля зрителям по TCP.
+ * Каждая пачка изменений поля ({@link CellBatchListener}) кодируется один раз в разностный кадр ({@link Frames}),
+ *  и один и тот же буфер кадра рассылается всем зрителям неблокирующим вводом-выводом в отдельном потоке.
+ * Раз в {@link #keyPeriod} кадров кодируется ключевой кадр со всем полем. Новый зритель получает последний ключевой кадр
+ *  и разностные кадры после него. Зритель, который не успевает принимать кадры, пропускает накопленные кадры
+ *  и получает то же, что и новый зритель.
+ * <p>
+ * Изменения поля кодируются в потоке игры, поле из потока трансляции не читается.
+ */
+public class SpectatorServer implements CellBatchListener, AutoCloseable {
+    /**
+     * Порт трансляции по умолчанию
+     */
+    public static final int DEFAULT_PORT = 7777;
+    /**
+     * Период ключевых кадров по умолчанию
+     */
+    public static final int DEFAULT_KEY_PERIOD = 100;
+    /**
+     * Сколько байт сверх двойного размера {@link #history} может ждать отправки зрителю, прежде чем он будет считаться отстающим.
+     * Порог растёт с ключевым кадром, иначе зритель большого поля отставал бы сразу после догоняния.
+     */
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final Field field;
+    /**
+     * Раз в сколько разностных кадров кодируется ключевой
+     */
+    private final int keyPeriod;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread thread;
+    /**
+     * Закодированные кадры, ещё не переданные потоку трансляции
+     */
+    private final ConcurrentLinkedQueue<Frame> outbox = new ConcurrentLinkedQueue<>();
+    /**
+     * Буфер кодирования, переиспользуется
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    /**
+     * Номер последнего разностного кадра
+     */
+    private volatile long frameNumber = 0;
+    private volatile long bytesEncoded = 0;
+    private volatile boolean closed = false;
+    /**
+     * Последний ключевой кадр и разностные кадры после него. Используется только потоком трансляции.
+     */
+    private final List<ByteBuffer> history = new ArrayList<>();
+    /**
+     * Размер кадров {@link #history} в байтах. Используется только потоком трансляции.
+     */
+    private long historyBytes = 0;
+    /**
+     * Подключенные зрители. Используется только потоком трансляции.
+     */
+    private final List<Spectator> spectators = new ArrayList<>();
+    private volatile int spectatorCount = 0;
+
+    /**
+     * @param field транслируемое поле
+     * @param address адрес, на котором принимаются зрители. Порт 0 - любой свободный, см. {@link #getPort()}
+     */
+    public SpectatorServer(Field field, InetSocketAddress address) throws IOException {
+        this(field, address, DEFAULT_KEY_PERIOD);
+    }
+
+    /**
+     * @param field транслируемое поле
+     * @param address адрес, на котором принимаются зрители. Порт 0 - любой свободный, см. {@link #getPort()}
+     * @param keyPeriod раз в сколько разностных кадров кодируется ключевой, больше 0
+     */
+    public SpectatorServer(Field field, InetSocketAddress address, int keyPeriod) throws IOException {
+        if (keyPeriod <= 0) throw new IllegalArgumentException("Key frame period must be positive");
+        this.field = field;
+        this.keyPeriod = keyPeriod;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        publishKey();
+        field.addBatchListener(this);
+        thread = new Thread(this::serve, "spectator-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Кодирует изменения такта в разностный кадр и, если пора, ключевой кадр
+     */
+    @Override
+    public void onCellsUpdated(CellChangeBatch batch) {
+        if (closed) return;
+        long number = frameNumber + 1;
+        ensureScratch(Frames.maxDeltaSize(batch.size()));
+        Frames.writeDelta(scratch, number, batch);
+        publish(false);
+        frameNumber = number;
+        if (number % keyPeriod == 0) publishKey();
+    }
+
+    private void publishKey() {
+        scratch.clear();
+        scratch = Frames.writeKey(scratch, frameNumber, field);
+        publish(true);
+    }
+
+    private void ensureScratch(long size) {
+        if (size > Frames.MAX_BUFFER) throw new IllegalStateException("Frame is too large: " + size + " bytes");
+        if (scratch.capacity() < size) scratch = ByteBuffer.allocate((int) Math.min(Math.max(size, 2L * scratch.capacity()), Frames.MAX_BUFFER));
+        scratch.clear();
+    }
+
+    /**
+     * Копирует закодированный кадр в буфер точного размера и передаёт потоку трансляции
+     */
+    private void publish(boolean key) {
+        scratch.flip();
+        ByteBuffer data = ByteBuffer.allocate(scratch.remaining());
+        data.put(scratch).flip();
+        bytesEncoded += data.remaining();
+        outbox.add(new Frame(data.asReadOnlyBuffer(), key));
+        selector.wakeup();
+    }
+
+    /**
+     * Цикл потока трансляции: приём зрителей, рассылка новых кадров, дописывание кадров по готовности сокетов
+     */
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                for (Frame frame; (frame = outbox.poll()) != null; ) {
+                    if (frame.key) {
+                        //Подключенные зрители уже знают это состояние, ключевой кадр нужен только новым
+                        history.clear();
+                        history.add(frame.data);
+                        historyBytes = frame.data.remaining();
+                    } else {
+                        history.add(frame.data);
+                        historyBytes += frame.data.remaining();
+                        for (Spectator spectator : spectators) {
+                            spectator.enqueue(frame.data);
+                        }
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                }
+                for (Iterator<Spectator> it = spectators.iterator(); it.hasNext(); ) {
+                    Spectator spectator = it.next();
+                    if (!spectator.flush()) {
+                        spectator.close();
+                        it.remove();
+                    }
+                }
+                spectatorCount = spectators.size();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) throw new IllegalStateException("Spectator server failed", e);
+        } finally {
+            for (Spectator spectator : spectators) {
+                spectator.close();
+            }
+            spectators.clear();
+            spectatorCount = 0;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Spectator spectator = new Spectator(channel, channel.register(selector, 0));
+            spectator.catchUp();
+            spectators.add(spectator);
+        }
+    }
+
+    /**
+     * @return порт, на котором принимаются зрители
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Номер последнего разностного кадра, т.е. количество пачек изменений, закодированных с создания сервера
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Сколько байт закодировано во все кадры, включая ключевые. Каждый кадр считается один раз, сколько бы зрителей его ни получили.
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded;
+    }
+
+    public int getSpectatorCount() {
+        return spectatorCount;
+    }
+
+    /**
+     * Останавливает трансляцию и отключает зрителей. Поле перестаёт кодироваться.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private static class Frame {
+        final ByteBuffer data;
+        final boolean key;
+
+        Frame(ByteBuffer data, boolean key) {
+            this.data = data;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Подключенный зритель и очередь кадров для него. Кадры общие для всех зрителей, у каждого своя позиция в кадре.
+     */
+    private class Spectator {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private long pendingBytes = 0;
+
+        Spectator(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void enqueue(ByteBuffer frame) {
+            if (pendingBytes + frame.remaining() > MAX_PENDING_BYTES + 2 * historyBytes) {
+                catchUp();
+                return;
+            }
+            pending.add(frame.duplicate());
+            pendingBytes += frame.remaining();
+        }
+
+        /**
+         * Заменяет ожидающие кадры последним ключевым кадром и кадрами после него.
+         * Начатый кадр дописывается, чтобы не нарушить поток.
+         */
+        void catchUp() {
+            ByteBuffer started = pending.peek();
+            pending.clear();
+            pendingBytes = 0;
+            if (started != null && started.position() > 0) {
+                pending.add(started);
+                pendingBytes += started.remaining();
+            }
+            for (ByteBuffer frame : history) {
+                pending.add(frame.duplicate());
+                pendingBytes += frame.remaining();
+            }
+        }
+
+        /**
+         * Пишет ожидающие кадры, пока сокет принимает данные
+         * @return {@code false} если зритель отключился
+         */
+        boolean flush() {
+            try {
+                ByteBuffer frame;
+                while ((frame = pending.peek()) != null) {
+                    int written = channel.write(frame);
+                    pendingBytes -= written;
+                    if (frame.hasRemaining()) break;
+                    pending.poll();
+                }
+                key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                //Зритель ничего не присылает, прочитанное означает закрытие соединения
+                if (key.isReadable()) {
+                    ByteBuffer sink = ByteBuffer.allocate(64);
+                    int read;
+                    while ((read = channel.read(sink)) > 0) {
+                        sink.clear();
+                    }
+                    if (read < 0) return false;
+                }
+                return true;
+            } catch (IOException | CancelledKeyException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
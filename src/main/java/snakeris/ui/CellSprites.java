@@ -0,0 +1,148 @@
+package snakeris.ui;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import snakeris.logic.Field;
+import snakeris.logic.cell.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Спрайты ячеек для рисования поля на холсте: для каждого типа содержимого заранее рисуется изображение ячейки.
+ * Общие для {@link FieldCanvasRenderer} и {@link ViewportRenderer}.
+ */
+class CellSprites {
+    /**
+     * Цвет линий сетки
+     */
+    private static final Color GRID_COLOR = Color.valueOf("#EEEEEE");
+    /**
+     * Размер стороны ячейки
+     */
+    private final int cellSize;
+    /**
+     * Спрайты по имени типа содержимого ячейки {@link CellContent#getName()}.
+     * Для каждого типа содержимого, кроме еды, следует добавить спрайт.
+     */
+    private final Map<String, Image> sprites = new HashMap<>();
+    /**
+     * Спрайты еды по питательности. Создаются при первой встрече значения.
+     */
+    private final Map<Integer, Image> foodSprites = new HashMap<>();
+
+    CellSprites(int cellSize) {
+        this.cellSize = cellSize;
+        sprites.put(EmptyCellContent.NAME, createSprite(gc -> {}));
+        sprites.put(SnakeCellContent.NAME, createSprite(gc -> fillSquare(gc, Color.DARKGREEN)));
+        sprites.put(FallingBlockCellContent.NAME, createSprite(gc -> fillSquare(gc, Color.DARKRED)));
+        sprites.put(StaticCellContent.NAME, createSprite(gc -> fillSquare(gc, Color.BLACK)));
+    }
+
+    /**
+     * Цвет содержимого ячейки без деталей спрайта, например для миникарты
+     * @throws UnsupportedOperationException если для типа содержимого нет цвета
+     */
+    static Color color(CellContent content) {
+        if (content instanceof FoodCellContent) return ((FoodCellContent) content).nutrition > 0 ? Color.YELLOW : Color.RED;
+        switch (content.getName()) {
+            case EmptyCellContent.NAME:
+                return Color.WHITE;
+            case SnakeCellContent.NAME:
+                return Color.DARKGREEN;
+            case FallingBlockCellContent.NAME:
+                return Color.DARKRED;
+            case StaticCellContent.NAME:
+                return Color.BLACK;
+            default:
+                throw new UnsupportedOperationException("Unknown type of cell content");
+        }
+    }
+
+    /**
+     * Спрайт по содержимому ячейки
+     * @throws UnsupportedOperationException если для типа содержимого нет спрайта
+     */
+    Image sprite(CellContent content) {
+        if (content instanceof FoodCellContent) return foodSprite(((FoodCellContent) content).nutrition);
+        Image sprite = sprites.get(content.getName());
+        if (sprite == null) throw new UnsupportedOperationException("Unknown type of cell content");
+        return sprite;
+    }
+
+    /**
+     * Рисует ячейку, частично занятую содержимым over: под ним видно содержимое under, over занимает долю fraction
+     *  ячейки со стороны соседней ячейки neighbour (с учётом перехода через границы поля).
+     * Если ячейки не соседние, over рисуется целиком.
+     * @param px координата левого края ячейки на холсте
+     * @param py координата верхнего края ячейки на холсте
+     * @param index индекс ячейки (y*width+x)
+     * @param neighbour индекс соседней ячейки
+     * @param fraction доля ячейки от 0 до 1
+     */
+    void drawPartial(GraphicsContext gc, double px, double py, Field field, int index, int neighbour,
+                     double fraction, CellContent under, CellContent over) {
+        int width = field.getWidth();
+        int height = field.getHeight();
+        int x = index % width, y = index / width;
+        int nx = neighbour % width, ny = neighbour / width;
+        double part = Math.max(0, Math.min(1, fraction)) * cellSize;
+        gc.drawImage(sprite(under), px, py);
+        Image image = sprite(over);
+        if (ny == y && nx == (x + 1) % width) {
+            gc.drawImage(image, cellSize - part, 0, part, cellSize, px + cellSize - part, py, part, cellSize);
+        } else if (ny == y && nx == (x - 1 + width) % width) {
+            gc.drawImage(image, 0, 0, part, cellSize, px, py, part, cellSize);
+        } else if (nx == x && ny == (y + 1) % height) {
+            gc.drawImage(image, 0, cellSize - part, cellSize, part, px, py + cellSize - part, cellSize, part);
+        } else if (nx == x && ny == (y - 1 + height) % height) {
+            gc.drawImage(image, 0, 0, cellSize, part, px, py, cellSize, part);
+        } else {
+            gc.drawImage(image, px, py);
+        }
+    }
+
+    /**
+     * Спрайт еды с заданной питательностью: жёлтый круг для положительной, красный для отрицательной,
+     *  с числом если питательность по модулю больше 1.
+     */
+    private Image foodSprite(int nutrition) {
+        return foodSprites.computeIfAbsent(nutrition, n -> createSprite(gc -> {
+            gc.setFill(n > 0 ? Color.YELLOW : Color.RED);
+            gc.fillOval(0, 0, cellSize, cellSize);
+            if (Math.abs(n) == 1) return;
+            gc.setFill(Color.BLACK);
+            gc.fillText(Integer.toString(n), cellSize / 3., cellSize * 3 / 4.);
+        }));
+    }
+
+    /**
+     * Рисует спрайт ячейки: фон с линиями сетки, поверх которого рисуется содержимое
+     * @param painter рисует содержимое в квадрате от 0 до {@link #cellSize}
+     * @return Изображение спрайта
+     */
+    private Image createSprite(Consumer<GraphicsContext> painter) {
+        Canvas sprite = new Canvas(cellSize, cellSize);
+        GraphicsContext gc = sprite.getGraphicsContext2D();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, cellSize, cellSize);
+        gc.setStroke(GRID_COLOR);
+        gc.strokeRect(0.5, 0.5, cellSize - 1, cellSize - 1);
+        painter.accept(gc);
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        return sprite.snapshot(params, null);
+    }
+
+    /**
+     * Вспомогательный метод, закрашивающий весь спрайт
+     */
+    private void fillSquare(GraphicsContext gc, Color color) {
+        gc.setFill(color);
+        gc.fillRect(0, 0, cellSize, cellSize);
+    }
+}
@@ -0,0 +1,111 @@
+package snakeris.ui;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import snakeris.listener.CellBatchListener;
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Field;
+import snakeris.logic.cell.CellContent;
+
+/**
+ * Отображает поле {@link Field} на одном {@link Canvas}.
+ * В отличие от {@link FieldPaneMapping} не создаёт узлов на каждую ячейку:
+ *  для каждого типа содержимого заранее рисуется спрайт ({@link CellSprites}), а при изменении ячейки спрайт копируется на холст.
+ * Изменённые ячейки только помечаются, перерисовываются они в {@link #render()},
+ *  который следует вызывать раз в кадр (например из {@link javafx.animation.AnimationTimer}).
+ */
+public class FieldCanvasRenderer implements FieldRenderer, CellBatchListener {
+    /**
+     * Отображаемое поле
+     */
+    private final Field field;
+    /**
+     * Холст, на котором рисуется поле
+     */
+    private final Canvas canvas;
+    /**
+     * Размер стороны ячейки
+     */
+    private final int cellSize;
+    /**
+     * Спрайты ячеек
+     */
+    private final CellSprites sprites;
+    /**
+     * Помеченные для перерисовки ячейки поля (индекс y*width+x)
+     */
+    private final boolean[] dirty;
+    /**
+     * Индексы помеченных ячеек в порядке пометки, первые {@link #dirtyCount} элементов
+     */
+    private final int[] dirtyIndices;
+    private int dirtyCount = 0;
+
+    public FieldCanvasRenderer(Field field, int cellSize) {
+        this.field = field;
+        this.cellSize = cellSize;
+        this.canvas = new Canvas(field.getWidth() * cellSize, field.getHeight() * cellSize);
+        int size = field.getWidth() * field.getHeight();
+        dirty = new boolean[size];
+        dirtyIndices = new int[size];
+
+        sprites = new CellSprites(cellSize);
+
+        //Поле может быть уже заполнено (змейка и еда создаются вместе с игрой), поэтому первый кадр рисует всё поле
+        for (int i = 0; i < size; i++) {
+            markDirty(i);
+        }
+        field.addBatchListener(this);
+    }
+
+    /**
+     * Помечает изменённые ячейки для перерисовки в следующем кадре
+     * @param batch изменённые ячейки
+     */
+    @Override
+    public void onCellsUpdated(CellChangeBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            markDirty(batch.getIndex(i));
+        }
+    }
+
+    private void markDirty(int index) {
+        if (dirty[index]) return;
+        dirty[index] = true;
+        dirtyIndices[dirtyCount++] = index;
+    }
+
+    @Override
+    public boolean render() {
+        if (dirtyCount == 0) return false;
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        int width = field.getWidth();
+        for (int i = 0; i < dirtyCount; i++) {
+            int index = dirtyIndices[i];
+            dirty[index] = false;
+            int x = index % width;
+            int y = index / width;
+            gc.drawImage(sprites.sprite(field.getContent(x, y)), x * cellSize, y * cellSize);
+        }
+        dirtyCount = 0;
+        return true;
+    }
+
+    @Override
+    public void renderPartial(int index, int neighbour, double fraction, CellContent under, CellContent over) {
+        int width = field.getWidth();
+        sprites.drawPartial(canvas.getGraphicsContext2D(), index % width * cellSize, index / width * cellSize,
+                field, index, neighbour, fraction, under, over);
+        markDirty(index);
+    }
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    @Override
+    public Node getNode() {
+        return canvas;
+    }
+}
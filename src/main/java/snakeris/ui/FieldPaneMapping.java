@@ -6,8 +6,9 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
-import snakeris.listener.CellUpdateListener;
+import snakeris.listener.CellBatchListener;
 import snakeris.logic.Cell;
+import snakeris.logic.CellChangeBatch;
 import snakeris.logic.Field;
 import snakeris.logic.cell.*;
 
@@ -17,7 +18,11 @@ import java.util.Map;
 /**
  * Отображает поле {@link Field} в таблицу {@link Node} интерфейса
  */
-public class FieldPaneMapping implements CellUpdateListener {
+public class FieldPaneMapping implements CellBatchListener {
+    /**
+     * Отображаемое поле
+     */
+    private final Field field;
     /**
      * Панель содержащая отображаемые узлы
      */
@@ -38,6 +43,7 @@ public class FieldPaneMapping implements CellUpdateListener {
     private final Map<String, CellNodeMapper> mappers = new HashMap<>();
 
     public FieldPaneMapping(Field field, Pane pane, int cellSize) {
+        this.field = field;
         this.pane = pane;
         this.cellSize = cellSize;
 
@@ -48,7 +54,14 @@ public class FieldPaneMapping implements CellUpdateListener {
 
         initMappers();
 
-        field.addCellListener(this);
+        //Поле может быть уже заполнено (змейка и еда создаются вместе с игрой)
+        for (int y = 0; y < field.getHeight(); y++) {
+            for (int x = 0; x < field.getWidth(); x++) {
+                if (field.getContent(x, y) != EmptyCellContent.instance) show(field.getCell(x, y));
+            }
+        }
+
+        field.addBatchListener(this);
     }
 
     /**
@@ -89,12 +102,21 @@ public class FieldPaneMapping implements CellUpdateListener {
     }
 
     /**
-     * При обновлении содержимого ячейки использует маппер и обновляет соответствующий отображаемый узел
-     * @param cell обновлённая ячейка
-     * @param old старое значение содержимого ячейки
+     * При обновлении содержимого ячеек обновляет соответствующие отображаемые узлы, по одному на изменённую ячейку
+     * @param batch изменённые ячейки
      */
     @Override
-    public void onCellUpdate(Cell cell, CellContent old) {
+    public void onCellsUpdated(CellChangeBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            show(batch.getCell(i));
+        }
+    }
+
+    /**
+     * Использует маппер и обновляет отображаемый узел ячейки по её текущему содержимому
+     * @param cell отображаемая ячейка
+     */
+    private void show(Cell cell) {
         CellNodeMapper mapper = mappers.get(cell.getContent().getName());
         if (mapper == null) throw new UnsupportedOperationException("Unknown type of cell content");
         int x = cell.getX();
@@ -0,0 +1,31 @@
+package snakeris.ui;
+
+import javafx.scene.Node;
+import snakeris.logic.cell.CellContent;
+
+/**
+ * Отрисовка поля на холсте с перерисовкой изменённых ячеек раз в кадр
+ */
+public interface FieldRenderer {
+    /**
+     * Узел, на котором рисуется поле
+     */
+    Node getNode();
+
+    /**
+     * Перерисовывает изменённые с прошлого кадра ячейки
+     * @return {@code true} если что-то было перерисовано
+     */
+    boolean render();
+
+    /**
+     * Рисует ячейку, частично занятую содержимым over, для плавного движения между тактами:
+     *  под ним видно содержимое under, over занимает долю fraction ячейки со стороны соседней ячейки neighbour
+     *  (с учётом перехода через границы поля). Если ячейки не соседние, over рисуется целиком.
+     * Ячейка помечается для перерисовки, поэтому следующий {@link #render()} вернёт её к содержимому поля.
+     * @param index индекс ячейки (y*width+x)
+     * @param neighbour индекс соседней ячейки, со стороны которой рисуется over
+     * @param fraction доля ячейки от 0 до 1
+     */
+    void renderPartial(int index, int neighbour, double fraction, CellContent under, CellContent over);
+}
@@ -0,0 +1,219 @@
+package snakeris.ui;
+
+import javafx.scene.Group;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import snakeris.listener.CellBatchListener;
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Field;
+import snakeris.logic.cell.*;
+
+import java.util.Arrays;
+
+/**
+ * Миникарта поля: одна точка изображения на ячейку и рамка видимой области.
+ * Цвета точек хранятся в массиве ARGB и переносятся в изображение одним вызовом на кадр
+ *  ({@link javafx.scene.image.PixelWriter#setPixels(int, int, int, int, PixelFormat, int[], int, int)}),
+ *  объекты на ячейки не создаются. Переносятся только ряды, изменённые с прошлого кадра.
+ * <p>
+ * Если поле больше {@link #MAX_SIZE} по ширине или высоте, точка соответствует квадрату ячеек
+ *  и показывает самое заметное содержимое квадрата. Для каждой точки хранится количество ячеек каждого вида,
+ *  счётчики меняются по старому и новому содержимому пачки, поэтому пересчёт точки не читает ячейки поля
+ *  и время кадра зависит от количества изменённых точек, а не от размера квадрата.
+ */
+public class Minimap implements CellBatchListener {
+    /**
+     * Наибольшая сторона изображения в точках
+     */
+    public static final int MAX_SIZE = 256;
+    /**
+     * Цвет рамки видимой области
+     */
+    private static final Color FRAME_COLOR = Color.DODGERBLUE;
+    /**
+     * Виды содержимого по возрастанию заметности: змейка заметнее еды, полезная еда заметнее вредной, еда заметнее блоков
+     */
+    private static final int EMPTY = 0, STATIC = 1, FALLING = 2, BAD_FOOD = 3, FOOD = 4, SNAKE = 5, KINDS = 6;
+
+    private final Field field;
+    /**
+     * Сторона квадрата ячеек, соответствующего одной точке
+     */
+    private final int scale;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final WritableImage image;
+    /**
+     * Цвета точек ARGB по рядам
+     */
+    private final int[] pixels;
+    /**
+     * Количество ячеек каждого вида в квадрате точки, по индексу точка*{@link #KINDS}+вид
+     */
+    private final int[] counts;
+    /**
+     * Цвет ARGB каждого вида, заполняется по встреченному содержимому
+     */
+    private final int[] kindColors = new int[KINDS];
+    /**
+     * Помеченные для пересчёта точки, первые {@link #dirtyCount} элементов {@link #dirtyIndices}
+     */
+    private final boolean[] dirty;
+    private final int[] dirtyIndices;
+    private int dirtyCount = 0;
+    private final Rectangle frame = new Rectangle();
+    private final Group node;
+
+    public Minimap(Field field) {
+        this.field = field;
+        int side = Math.max(field.getWidth(), field.getHeight());
+        scale = (side + MAX_SIZE - 1) / MAX_SIZE;
+        mapWidth = (field.getWidth() + scale - 1) / scale;
+        mapHeight = (field.getHeight() + scale - 1) / scale;
+        image = new WritableImage(mapWidth, mapHeight);
+        pixels = new int[mapWidth * mapHeight];
+        counts = new int[pixels.length * KINDS];
+        dirty = new boolean[pixels.length];
+        dirtyIndices = new int[pixels.length];
+
+        kindColors[EMPTY] = argb(EmptyCellContent.instance);
+        Arrays.fill(pixels, kindColors[EMPTY]);
+        //Поле может быть уже заполнено, пустые ячейки не меняют цвет точки и пропускаются
+        int width = field.getWidth();
+        for (int i = field.nextNonEmpty(0); i >= 0; i = field.nextNonEmpty(i + 1)) {
+            int pixel = pixel(i % width, i / width);
+            counts[pixel * KINDS + kind(field.getContent(i % width, i / width))]++;
+            markDirty(pixel);
+        }
+        image.getPixelWriter().setPixels(0, 0, mapWidth, mapHeight, PixelFormat.getIntArgbInstance(), pixels, 0, mapWidth);
+
+        frame.setFill(Color.TRANSPARENT);
+        frame.setStroke(FRAME_COLOR);
+        frame.setManaged(false);
+        node = new Group(new ImageView(image), frame);
+        field.addBatchListener(this);
+    }
+
+    /**
+     * Узел с изображением и рамкой, размером {@link #getMapWidth()} x {@link #getMapHeight()}
+     */
+    public Group getNode() {
+        return node;
+    }
+
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    /**
+     * Перемещает рамку видимой области
+     * @param x левая видимая ячейка
+     * @param y верхняя видимая ячейка
+     * @param cols ширина видимой области в ячейках
+     * @param rows высота видимой области в ячейках
+     */
+    public void setViewport(int x, int y, int cols, int rows) {
+        frame.setX(x / (double) scale + 0.5);
+        frame.setY(y / (double) scale + 0.5);
+        frame.setWidth(Math.max(1, cols / (double) scale - 1));
+        frame.setHeight(Math.max(1, rows / (double) scale - 1));
+    }
+
+    /**
+     * Переносит изменения пачки в счётчики видов и помечает точки, у которых они изменились
+     */
+    @Override
+    public void onCellsUpdated(CellChangeBatch batch) {
+        int width = field.getWidth();
+        for (int i = 0; i < batch.size(); i++) {
+            int oldKind = kind(batch.getOld(i));
+            int newKind = kind(batch.getNew(i));
+            if (oldKind == newKind) continue;
+            int index = batch.getIndex(i);
+            int pixel = pixel(index % width, index / width);
+            counts[pixel * KINDS + oldKind]--;
+            counts[pixel * KINDS + newKind]++;
+            markDirty(pixel);
+        }
+    }
+
+    private int pixel(int x, int y) {
+        return (y / scale) * mapWidth + x / scale;
+    }
+
+    private void markDirty(int pixel) {
+        if (dirty[pixel]) return;
+        dirty[pixel] = true;
+        dirtyIndices[dirtyCount++] = pixel;
+    }
+
+    /**
+     * Пересчитывает помеченные точки и переносит изменённые ряды в изображение
+     * @return {@code true} если изображение изменилось
+     */
+    public boolean render() {
+        if (dirtyCount == 0) return false;
+        int minRow = mapHeight, maxRow = -1;
+        for (int i = 0; i < dirtyCount; i++) {
+            int pixel = dirtyIndices[i];
+            dirty[pixel] = false;
+            int row = pixel / mapWidth;
+            pixels[pixel] = blockColor(pixel);
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+        }
+        dirtyCount = 0;
+        image.getPixelWriter().setPixels(0, minRow, mapWidth, maxRow - minRow + 1,
+                PixelFormat.getIntArgbInstance(), pixels, minRow * mapWidth, mapWidth);
+        return true;
+    }
+
+    /**
+     * Цвет точки: самый заметный вид содержимого, который есть в квадрате ячеек
+     */
+    private int blockColor(int pixel) {
+        for (int kind = KINDS - 1; kind > EMPTY; kind--) {
+            if (counts[pixel * KINDS + kind] > 0) return kindColors[kind];
+        }
+        return kindColors[EMPTY];
+    }
+
+    /**
+     * Вид содержимого. Цвет вида запоминается при первой встрече.
+     */
+    private int kind(CellContent content) {
+        int kind;
+        if (content instanceof FoodCellContent) {
+            kind = ((FoodCellContent) content).nutrition > 0 ? FOOD : BAD_FOOD;
+        } else {
+            switch (content.getName()) {
+                case SnakeCellContent.NAME:
+                    kind = SNAKE;
+                    break;
+                case FallingBlockCellContent.NAME:
+                    kind = FALLING;
+                    break;
+                case StaticCellContent.NAME:
+                    kind = STATIC;
+                    break;
+                default:
+                    return EMPTY;
+            }
+        }
+        if (kindColors[kind] == 0) kindColors[kind] = argb(content);
+        return kind;
+    }
+
+    private static int argb(CellContent content) {
+        Color color = CellSprites.color(content);
+        return 0xFF000000 | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+    }
+}
@@ -0,0 +1,187 @@
+package snakeris.ui;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import snakeris.listener.CellBatchListener;
+import snakeris.logic.CellChangeBatch;
+import snakeris.logic.Field;
+import snakeris.logic.cell.CellContent;
+
+/**
+ * Отображает окно поля {@link Field} заданного размера на {@link Canvas} и миникарту {@link Minimap} в углу окна.
+ * Рисуются только ячейки внутри окна, поэтому время кадра и память холста зависят от размера окна, а не поля.
+ * <p>
+ * Окно следует за точкой {@link #follow(int, int)} (головой змейки): пока точка в средней половине окна,
+ *  окно стоит на месте, иначе сдвигается так, чтобы точка оказалась в центре. Окно не выходит за границы поля.
+ * После сдвига окно перерисовывается целиком, иначе перерисовываются только изменённые видимые ячейки.
+ */
+public class ViewportRenderer implements FieldRenderer, CellBatchListener {
+    /**
+     * Отступ миникарты от края окна
+     */
+    private static final int MINIMAP_MARGIN = 8;
+
+    private final Field field;
+    private final int cellSize;
+    /**
+     * Размер окна в ячейках
+     */
+    private final int cols;
+    private final int rows;
+    private final CellSprites sprites;
+    private final Canvas canvas;
+    private final Minimap minimap;
+    private final Pane pane;
+    /**
+     * Левая верхняя видимая ячейка
+     */
+    private int viewX = 0, viewY = 0;
+    /**
+     * Сдвинулось ли окно с прошлого кадра
+     */
+    private boolean moved = true;
+    /**
+     * Помеченные для перерисовки ячейки окна (индекс относительно окна)
+     */
+    private final boolean[] dirty;
+    /**
+     * Индексы помеченных ячеек окна в порядке пометки, первые {@link #dirtyCount} элементов
+     */
+    private final int[] dirtyIndices;
+    private int dirtyCount = 0;
+
+    /**
+     * @param cols ширина окна в ячейках, уменьшается до ширины поля
+     * @param rows высота окна в ячейках, уменьшается до высоты поля
+     */
+    public ViewportRenderer(Field field, int cellSize, int cols, int rows) {
+        if (cols <= 0 || rows <= 0) throw new IllegalArgumentException("Viewport must not be empty");
+        this.field = field;
+        this.cellSize = cellSize;
+        this.cols = Math.min(cols, field.getWidth());
+        this.rows = Math.min(rows, field.getHeight());
+        sprites = new CellSprites(cellSize);
+        canvas = new Canvas(this.cols * cellSize, this.rows * cellSize);
+        dirty = new boolean[this.cols * this.rows];
+        dirtyIndices = new int[dirty.length];
+
+        minimap = new Minimap(field);
+        Node map = minimap.getNode();
+        map.setLayoutX(canvas.getWidth() - minimap.getMapWidth() - MINIMAP_MARGIN);
+        map.setLayoutY(MINIMAP_MARGIN);
+        minimap.setViewport(viewX, viewY, this.cols, this.rows);
+        pane = new Pane(canvas, map);
+        pane.setPrefSize(canvas.getWidth(), canvas.getHeight());
+        field.addBatchListener(this);
+    }
+
+    @Override
+    public Node getNode() {
+        return pane;
+    }
+
+    public Minimap getMinimap() {
+        return minimap;
+    }
+
+    public int getViewX() {
+        return viewX;
+    }
+
+    public int getViewY() {
+        return viewY;
+    }
+
+    /**
+     * Сдвигает окно, если точка вышла из средней половины окна
+     * @param x столбец точки
+     * @param y ряд точки
+     */
+    public void follow(int x, int y) {
+        int newX = viewX, newY = viewY;
+        if (x < viewX + cols / 4 || x >= viewX + cols - cols / 4) newX = x - cols / 2;
+        if (y < viewY + rows / 4 || y >= viewY + rows - rows / 4) newY = y - rows / 2;
+        newX = Math.max(0, Math.min(newX, field.getWidth() - cols));
+        newY = Math.max(0, Math.min(newY, field.getHeight() - rows));
+        if (newX == viewX && newY == viewY) return;
+        viewX = newX;
+        viewY = newY;
+        moved = true;
+        minimap.setViewport(viewX, viewY, cols, rows);
+    }
+
+    /**
+     * Помечает изменённые видимые ячейки для перерисовки в следующем кадре
+     * @param batch изменённые ячейки
+     */
+    @Override
+    public void onCellsUpdated(CellChangeBatch batch) {
+        if (moved) return;
+        for (int i = 0; i < batch.size(); i++) {
+            markDirty(batch.getIndex(i));
+        }
+    }
+
+    /**
+     * Помечает ячейку поля, если она видна
+     */
+    private void markDirty(int index) {
+        int width = field.getWidth();
+        int x = index % width - viewX;
+        int y = index / width - viewY;
+        if (x < 0 || x >= cols || y < 0 || y >= rows) return;
+        int local = y * cols + x;
+        if (dirty[local]) return;
+        dirty[local] = true;
+        dirtyIndices[dirtyCount++] = local;
+    }
+
+    /**
+     * Перерисовывает окно целиком после сдвига или только помеченные ячейки, и миникарту
+     */
+    @Override
+    public boolean render() {
+        boolean changed = minimap.render();
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        if (moved) {
+            for (int i = 0; i < dirtyCount; i++) {
+                dirty[dirtyIndices[i]] = false;
+            }
+            dirtyCount = 0;
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    gc.drawImage(sprites.sprite(field.getContent(viewX + x, viewY + y)), x * cellSize, y * cellSize);
+                }
+            }
+            moved = false;
+            return true;
+        }
+        if (dirtyCount == 0) return changed;
+        for (int i = 0; i < dirtyCount; i++) {
+            int local = dirtyIndices[i];
+            dirty[local] = false;
+            int x = local % cols;
+            int y = local / cols;
+            gc.drawImage(sprites.sprite(field.getContent(viewX + x, viewY + y)), x * cellSize, y * cellSize);
+        }
+        dirtyCount = 0;
+        return true;
+    }
+
+    /**
+     * Рисует ячейку частично, как {@link FieldRenderer#renderPartial}. Невидимые ячейки пропускаются.
+     */
+    @Override
+    public void renderPartial(int index, int neighbour, double fraction, CellContent under, CellContent over) {
+        if (moved) return;
+        int width = field.getWidth();
+        int x = index % width - viewX;
+        int y = index / width - viewY;
+        if (x < 0 || x >= cols || y < 0 || y >= rows) return;
+        sprites.drawPartial(canvas.getGraphicsContext2D(), x * cellSize, y * cellSize,
+                field, index, neighbour, fraction, under, over);
+        markDirty(index);
+    }
+}